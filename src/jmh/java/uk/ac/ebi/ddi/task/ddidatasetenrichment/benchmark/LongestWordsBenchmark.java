@@ -0,0 +1,80 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.EnrichmentUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection of the non overlapping words of a field: the sort and sweep of
+ * {@link EnrichmentUtils#getLongestWords(java.util.Collection)} against the former pairwise scan.
+ * Run with: mvn -P jmh compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongestWordsBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int annotations;
+
+    private List<WordInField> words;
+
+    @Setup
+    public void setUp() {
+        // About one annotation every 8 characters, a third of them nested in or overlapping others
+        Random random = new Random(42);
+        int textLength = annotations * 8;
+        words = new ArrayList<>(annotations);
+        for (int i = 0; i < annotations; i++) {
+            int from = 1 + random.nextInt(textLength);
+            int to = from + 2 + random.nextInt(random.nextInt(3) == 0 ? 30 : 8);
+            words.add(new WordInField("word" + i, from, to));
+        }
+    }
+
+    @Benchmark
+    public List<WordInField> sortAndSweep() {
+        return EnrichmentUtils.getLongestWords(words);
+    }
+
+    @Benchmark
+    public List<WordInField> pairwiseScan() {
+        List<WordInField> matchedWords = new ArrayList<>();
+        for (WordInField word : words) {
+            WordInField overlapped = findOverlappedWordInList(word, matchedWords);
+            if (overlapped == null) {
+                matchedWords.add(word);
+            } else if (word.getFrom() <= overlapped.getFrom() && word.getTo() >= overlapped.getTo()) {
+                matchedWords.set(matchedWords.indexOf(overlapped), word);
+            }
+        }
+        return matchedWords;
+    }
+
+    private static WordInField findOverlappedWordInList(WordInField word, List<WordInField> matchedWords) {
+        for (WordInField wordInList : matchedWords) {
+            if (word.getFrom() <= wordInList.getTo() && word.getTo() >= wordInList.getFrom()) {
+                return wordInList;
+            }
+        }
+        return null;
+    }
+}
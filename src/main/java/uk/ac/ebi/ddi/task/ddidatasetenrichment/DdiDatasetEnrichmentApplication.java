@@ -6,18 +6,36 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.StreamUtils;
+import org.springframework.web.client.RestClientException;
 import uk.ac.ebi.ddi.ddidomaindb.dataset.DSField;
 import uk.ac.ebi.ddi.ddidomaindb.dataset.Field;
 import uk.ac.ebi.ddi.service.db.model.dataset.Dataset;
-import uk.ac.ebi.ddi.service.db.service.dataset.IDatasetService;
+import uk.ac.ebi.ddi.service.db.model.enrichment.DatasetEnrichmentInfo;
 import uk.ac.ebi.ddi.service.db.utils.DatasetCategory;
 import uk.ac.ebi.ddi.service.db.utils.DatasetUtils;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
-import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.EnrichedDataset;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.DeferredDataset;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.EnrichmentItem;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.AnnotatorCacheService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.BioOntologyService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.CachedSynonymsService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.ClassCacheService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.DatasetBulkService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.DeferredDatasetService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.EnrichmentInfoBulkService;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.EnrichmentService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.NegativeLookupService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.OntologyImportService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.services.SynonymSnapshotService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.Deadline;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.EnrichmentUtils;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.PipelineStage;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.ShuffledIterator;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static uk.ac.ebi.ddi.ddidomaindb.dataset.DSField.Additional.*;
@@ -29,13 +47,44 @@ public class DdiDatasetEnrichmentApplication implements CommandLineRunner {
     private EnrichmentService enrichmentService;
 
     @Autowired
-    private IDatasetService datasetService;
+    private DatasetBulkService datasetBulkService;
+
+    @Autowired
+    private EnrichmentInfoBulkService enrichmentInfoBulkService;
+
+    @Autowired
+    private CachedSynonymsService cachedSynonymsService;
+
+    @Autowired
+    private AnnotatorCacheService annotatorCacheService;
+
+    @Autowired
+    private NegativeLookupService negativeLookupService;
+
+    @Autowired
+    private ClassCacheService classCacheService;
+
+    @Autowired
+    private BioOntologyService bioOntologyService;
+
+    @Autowired
+    private DeferredDatasetService deferredDatasetService;
+
+    @Autowired
+    private OntologyImportService ontologyImportService;
+
+    @Autowired
+    private SynonymSnapshotService synonymSnapshotService;
 
     @Autowired
     private DatasetEnrichmentTaskProperties properties;
 
     private static final int LOG_EVERY_N_RECORD = 500;
 
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private volatile int total;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DdiDatasetEnrichmentApplication.class);
 
     public static void main(String[] args) {
@@ -49,43 +98,183 @@ public class DdiDatasetEnrichmentApplication implements CommandLineRunner {
                 || properties.isForce();
     }
 
+    private boolean isInShard(Dataset dataset) {
+        return EnrichmentUtils.isInShard(dataset.getAccession(), dataset.getDatabase(),
+                properties.getShardIndex(), properties.getShardCount());
+    }
+
     @Override
     public void run(String... args) throws Exception {
-        List<Dataset> datasets = datasetService.readDatasetHashCode(properties.getDatabaseName())
-                .stream()
-                .filter(this::isDatasetNeedToEnrich)
-                .collect(Collectors.toList());
-        Collections.shuffle(datasets);  // For parallel computing
-        List<String> processed = new ArrayList<>();
-        datasets.forEach(x -> process(x, processed, datasets.size()));
+        if (!properties.getOntologyFiles().isEmpty()) {
+            ontologyImportService.importOntologies(properties.getOntologyFiles(), properties.getDictionaryFile());
+            return;
+        }
+        if (properties.isExportSynonymSnapshot()) {
+            synonymSnapshotService.export(properties.getSynonymSnapshotFile());
+            return;
+        }
+        if (properties.getShardCount() < 1
+                || properties.getShardIndex() < 0 || properties.getShardIndex() >= properties.getShardCount()) {
+            throw new IllegalArgumentException("Invalid shard " + properties.getShardIndex()
+                    + " of " + properties.getShardCount());
+        }
+        // The datasets parked by the previous runs go first
+        List<Dataset> deferred = deferredDatasetService.drain(properties.getDatabaseName(),
+                properties.getShardIndex(), properties.getShardCount());
+        Set<String> deferredIds = deferred.stream()
+                .map(x -> DeferredDataset.getId(x.getDatabase(), x.getAccession()))
+                .collect(Collectors.toSet());
+        long candidates = datasetBulkService.countCandidates(properties.getDatabaseName(), properties.isForce());
+        processed.set(0);
+        // The deferred datasets kept their status, they are among the candidates but all in this shard
+        total = (int) (Math.max(0, candidates - deferred.size()) / properties.getShardCount()) + deferred.size();
+        LOGGER.info("Shard {}/{}: about {} datasets to enrich, {} deferred", properties.getShardIndex(),
+                properties.getShardCount(), total, deferred.size());
+
+        // Each stage has its own workers, so Mongo reads and writes overlap with the BioPortal calls
+        PipelineStage<EnrichmentItem> writeStage = new PipelineStage<>("write",
+                properties.getWriteConcurrency(), properties.getQueueSize(), this::write);
+        PipelineStage<EnrichmentItem> resolveStage = new PipelineStage<>("resolve",
+                properties.getResolveConcurrency(), properties.getQueueSize(), x -> resolve(x, writeStage));
+        PipelineStage<EnrichmentItem> annotateStage = new PipelineStage<>("annotate",
+                properties.getConcurrency(), properties.getQueueSize(), x -> annotate(x, resolveStage));
+        PipelineStage<List<Dataset>> readStage = new PipelineStage<>("read",
+                properties.getReadConcurrency(), properties.getQueueSize(), x -> read(x, annotateStage));
+        try (CloseableIterator<Dataset> cursor = datasetBulkService.streamCandidates(properties.getDatabaseName(),
+                properties.isForce())) {
+            submitInBatches(deferred.iterator(), readStage);
+            Iterator<Dataset> datasets = StreamUtils.createStreamFromIterator(cursor)
+                    .filter(this::isInShard)
+                    .filter(x -> !deferredIds.contains(DeferredDataset.getId(x.getDatabase(), x.getAccession())))
+                    .iterator();
+            if (properties.getShuffleWindow() > 0) {
+                datasets = new ShuffledIterator<>(datasets, properties.getShuffleWindow());  // For parallel computing
+            }
+            submitInBatches(datasets, readStage);
+        } finally {
+            readStage.close();
+            annotateStage.close();
+            resolveStage.close();
+            writeStage.close();
+            enrichmentInfoBulkService.flush();
+            datasetBulkService.flush();
+            cachedSynonymsService.flush();
+            enrichmentInfoBulkService.logStatistics();
+            datasetBulkService.logStatistics();
+            cachedSynonymsService.logStatistics();
+            annotatorCacheService.logStatistics();
+            negativeLookupService.logStatistics();
+            classCacheService.logStatistics();
+            deferredDatasetService.logStatistics();
+        }
     }
 
-    private synchronized void showLog(String accession, List<String> processed, int total) {
-        processed.add(accession);
-        if (processed.size() % LOG_EVERY_N_RECORD == 0) {
-            LOGGER.info("Processed {}/{}", processed.size(), total);
+    private void submitInBatches(Iterator<Dataset> datasets, PipelineStage<List<Dataset>> readStage)
+            throws InterruptedException {
+        List<Dataset> batch = new ArrayList<>();
+        while (datasets.hasNext()) {
+            batch.add(datasets.next());
+            if (batch.size() >= properties.getReadBatchSize()) {
+                readStage.submit(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            readStage.submit(batch);
+        }
+    }
+
+    private void showLog() {
+        int count = processed.incrementAndGet();
+        if (count % LOG_EVERY_N_RECORD == 0) {
+            LOGGER.info("Processed {}/{}", count, total);
+        }
+    }
+
+    private void onError(Dataset dataset, Exception e) {
+        if (e instanceof RestClientException && bioOntologyService.isCircuitOpen()) {
+            // BioPortal is unavailable, try again in the next run rather than burning the retries now
+            LOGGER.warn("BioPortal unavailable, dataset {} deferred, {}", dataset.getAccession(), e.getMessage());
+            deferredDatasetService.park(dataset);
+        } else {
+            LOGGER.error("Exception occurred when processing dataset {},", dataset.getAccession(), e);
         }
+        showLog();
     }
 
-    private void process(Dataset datasetShort, List<String> processed, int total) {
+    private void read(List<Dataset> batch, PipelineStage<EnrichmentItem> next) {
+        List<Dataset> datasets;
+        Map<String, DatasetEnrichmentInfo> previous = Collections.emptyMap();
         try {
-            Dataset dataset = datasetService.read(datasetShort.getAccession(), datasetShort.getDatabase());
-            if (!isDatasetNeedToEnrich(dataset)) {
-                // We check this function once again to avoid repeat working on a same dataset
-                // When running this in parallel
-                return;
+            datasets = datasetBulkService.read(batch);
+            if (!properties.isOverwrite()) {
+                previous = enrichmentInfoBulkService.getLatest(datasets);
             }
-            Map<String, String> fields = new HashMap<>();
-            fields.put(DSField.NAME.getName(), dataset.getName());
-            fields.put(DSField.DESCRIPTION.getName(), dataset.getDescription());
-            fields.put(DATA.getName(), DatasetUtils.getFirstAdditional(dataset, DATA.getName()));
-            fields.put(SAMPLE.getName(), DatasetUtils.getFirstAdditional(dataset, SAMPLE.getName()));
-            fields.put(PUBMED_ABSTRACT.key(), DatasetUtils.getFirstAdditional(dataset, PUBMED_ABSTRACT.key()));
-            fields.put(PUBMED_TITLE.key(), DatasetUtils.getFirstAdditional(dataset, PUBMED_TITLE.key()));
-            EnrichedDataset enrichedDataset = enrichmentService.enrichment(dataset, fields, properties.isOverwrite());
+        } catch (Exception e) {
+            LOGGER.error("Exception occurred when reading a batch of {} datasets,", batch.size(), e);
+            batch.forEach(x -> showLog());
+            return;
+        }
+        // Datasets removed since the candidates were listed are not returned
+        for (int i = datasets.size(); i < batch.size(); i++) {
+            showLog();
+        }
+        for (Dataset dataset : datasets) {
+            try {
+                if (!isDatasetNeedToEnrich(dataset)) {
+                    // We check this function once again to avoid repeat working on a same dataset
+                    // When running this in parallel
+                    showLog();
+                    continue;
+                }
+                Map<String, String> fields = new HashMap<>();
+                fields.put(DSField.NAME.getName(), dataset.getName());
+                fields.put(DSField.DESCRIPTION.getName(), dataset.getDescription());
+                fields.put(DATA.getName(), DatasetUtils.getFirstAdditional(dataset, DATA.getName()));
+                fields.put(SAMPLE.getName(), DatasetUtils.getFirstAdditional(dataset, SAMPLE.getName()));
+                fields.put(PUBMED_ABSTRACT.key(), DatasetUtils.getFirstAdditional(dataset, PUBMED_ABSTRACT.key()));
+                fields.put(PUBMED_TITLE.key(), DatasetUtils.getFirstAdditional(dataset, PUBMED_TITLE.key()));
+                EnrichmentItem item = new EnrichmentItem(dataset, fields);
+                item.setPreviousEnrichmentInfo(
+                        previous.get(EnrichmentInfoBulkService.key(dataset.getDatabase(), dataset.getAccession())));
+                next.submit(item);
+            } catch (Exception e) {
+                onError(dataset, e);
+            }
+        }
+    }
 
+    private void annotate(EnrichmentItem item, PipelineStage<EnrichmentItem> next) {
+        try {
+            Deadline.run(startDeadline(), () -> enrichmentService.annotate(item, properties.isOverwrite()));
+            next.submit(item);
+        } catch (Exception e) {
+            onError(item.getDataset(), e);
+        }
+    }
+
+    private void resolve(EnrichmentItem item, PipelineStage<EnrichmentItem> next) {
+        try {
+            Deadline.run(startDeadline(), () -> enrichmentService.resolve(item));
+            next.submit(item);
+        } catch (Exception e) {
+            onError(item.getDataset(), e);
+        }
+    }
+
+    /**
+     * Each stage has its own budget, starting once it picks up the dataset, so the time spent waiting in the queue
+     * of a stage does not count
+     */
+    private long startDeadline() {
+        return System.nanoTime() + properties.getDatasetTimeout().toNanos();
+    }
+
+    private void write(EnrichmentItem item) {
+        Dataset dataset = item.getDataset();
+        try {
             Map<Field, String> toBeEnriched = new HashMap<>();
-            Map<String, String> enrichedAttributes = enrichedDataset.getEnrichedAttributes();
+            Map<String, String> enrichedAttributes = item.getEnrichedDataset().getEnrichedAttributes();
             toBeEnriched.put(ENRICH_TITLE, enrichedAttributes.get(DSField.NAME.getName()));
             toBeEnriched.put(ENRICH_ABSTRACT, enrichedAttributes.get(DSField.DESCRIPTION.getName()));
             toBeEnriched.put(ENRICH_SAMPLE, enrichedAttributes.get(SAMPLE.getName()));
@@ -93,21 +282,23 @@ public class DdiDatasetEnrichmentApplication implements CommandLineRunner {
             toBeEnriched.put(ENRICHE_PUBMED_TITLE, enrichedAttributes.get(PUBMED_TITLE.getName()));
             toBeEnriched.put(ENRICH_PUBMED_ABSTRACT, enrichedAttributes.get(PUBMED_ABSTRACT.getName()));
 
+            Map<String, Set<String>> additional = new HashMap<>();
             toBeEnriched.entrySet()
                     .stream()
                     .filter(x -> x.getValue() != null)
-                    .forEach(x -> dataset.addAdditional(x.getKey().key(),
+                    .forEach(x -> additional.put(x.getKey().key(),
                             Collections.singleton(EnrichmentUtils.removeRedundantSynonyms(x.getValue()))));
 
-            if (!dataset.getCurrentStatus().equalsIgnoreCase(DatasetCategory.DELETED.getType())) {
-                dataset.setCurrentStatus(DatasetCategory.ENRICHED.getType());
-            }
-            datasetService.update(dataset.getId(), dataset);
+            String status = dataset.getCurrentStatus().equalsIgnoreCase(DatasetCategory.DELETED.getType())
+                    ? dataset.getCurrentStatus() : DatasetCategory.ENRICHED.getType();
+            // The dataset is only marked as enriched once its enrichment info is stored, otherwise the next runs
+            // would reuse an enrichment info which does not exist
+            enrichmentService.saveEnrichmentInfo(item, () -> datasetBulkService.update(dataset, additional, status));
 
         } catch (Exception e) {
-            LOGGER.error("Exception occurred when processing dataset {},", datasetShort.getAccession(), e);
+            LOGGER.error("Exception occurred when processing dataset {},", dataset.getAccession(), e);
         } finally {
-            showLog(datasetShort.getAccession(), processed, total);
+            showLog();
         }
     }
 }
@@ -2,15 +2,226 @@ package uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @ConfigurationProperties("enrichment")
 public class DatasetEnrichmentTaskProperties {
 
+    /**
+     * Backends of the annotator, any other value of enrichment.annotator fails the startup
+     */
+    public enum AnnotatorBackend {
+        /** BioPortal annotator */
+        REMOTE,
+        /** Local dictionary built from ontology dumps */
+        DICTIONARY
+    }
+
     private String databaseName;
 
     private boolean force = false;
 
     private boolean overwrite = false;
 
+    /**
+     * Number of datasets read from the database in parallel
+     */
+    private int readConcurrency = 1;
+
+    /**
+     * Number of datasets fetched from Mongo in one query by the read stage
+     */
+    private int readBatchSize = 100;
+
+    /**
+     * Number of datasets annotated in parallel
+     */
+    private int concurrency = 1;
+
+    /**
+     * Number of datasets whose synonyms are resolved in parallel
+     */
+    private int resolveConcurrency = 1;
+
+    /**
+     * Number of datasets written back to the database in parallel
+     */
+    private int writeConcurrency = 1;
+
+    /**
+     * Number of dataset updates sent to Mongo in one bulk operation
+     */
+    private int writeBatchSize = 100;
+
+    /**
+     * Maximum time a dataset update waits in the buffer before being written
+     */
+    private Duration writeFlushInterval = Duration.ofSeconds(5);
+
+    /**
+     * Number of datasets waiting in front of each pipeline stage before the previous stage is throttled
+     */
+    private int queueSize = 100;
+
+    /**
+     * Maximum number of BioPortal requests in flight at the same time
+     */
+    private int maxConcurrentRequests = 8;
+
+    /**
+     * Size of the pool of HTTP connections to BioPortal
+     */
+    private int httpMaxConnections = 20;
+
+    /**
+     * Maximum number of pooled HTTP connections to the same host
+     */
+    private int httpMaxConnectionsPerRoute = 10;
+
+    /**
+     * Timeout for opening an HTTP connection, or getting one from the pool
+     */
+    private Duration httpConnectTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Maximum time without receiving data on an HTTP connection
+     */
+    private Duration httpReadTimeout = Duration.ofMinutes(2);
+
+    /**
+     * Whether to ask for gzip compressed HTTP responses
+     */
+    private boolean httpCompression = true;
+
+    /**
+     * Maximum number of BioPortal requests per second, the rate is halved each time BioPortal throttles requests
+     * then slowly raised back
+     */
+    private double maxRequestRate = 15;
+
+    /**
+     * Lowest number of BioPortal requests per second the rate can be lowered to
+     */
+    private double minRequestRate = 0.5;
+
+    /**
+     * Number of consecutive failed BioPortal requests after which BioPortal is no longer called for a while,
+     * the datasets are deferred to the next run instead
+     */
+    private int circuitBreakerFailureThreshold = 5;
+
+    /**
+     * How long BioPortal is no longer called once the failure threshold is reached
+     */
+    private Duration circuitBreakerOpenDuration = Duration.ofMinutes(1);
+
+    /**
+     * Index of the slice of datasets claimed by this instance, from 0 to shardCount - 1
+     */
+    private int shardIndex = 0;
+
+    /**
+     * Number of task instances sharing the same database
+     */
+    private int shardCount = 1;
+
+    /**
+     * Number of candidate datasets held in memory to randomize the processing order, 0 keeps the database order
+     */
+    private int shuffleWindow = 10000;
+
+    /**
+     * Time budget for annotating one dataset, and again for resolving its words, counted from when the stage picks
+     * it up. BioPortal requests made for the dataset are abandoned once it is over
+     */
+    private Duration datasetTimeout = Duration.ofMinutes(10);
+
+    /**
+     * Whether to send a second annotator request when the first one takes longer than most
+     */
+    private boolean hedgeAnnotatorRequests = false;
+
+    /**
+     * Maximum number of words kept in the in-memory synonym cache
+     */
+    private int synonymCacheSize = 50000;
+
+    /**
+     * How long annotator results are reused across runs, 0 disables the annotator cache
+     */
+    private Duration annotatorCacheTtl = Duration.ofDays(30);
+
+    /**
+     * How long a word unknown to BioPortal is not looked up again
+     */
+    private Duration negativeLookupTtl = Duration.ofDays(30);
+
+    /**
+     * How long a word whose classes could not be resolved is not looked up again, the datasets containing it are
+     * enriched without it meanwhile
+     */
+    private Duration failedLookupTtl = Duration.ofHours(6);
+
+    /**
+     * Local synonym dictionary, written by the ontology import and read by the enrichment
+     */
+    private String dictionaryFile;
+
+    /**
+     * Ontology dumps (OBO, OWL or BioPortal CSV) to import into the dictionary. When set, the task imports them
+     * instead of enriching datasets.
+     */
+    private List<String> ontologyFiles = new ArrayList<>();
+
+    /**
+     * Resolve synonyms with the local dictionary only, words missing from it are not looked up on BioPortal
+     */
+    private boolean offline = false;
+
+    /**
+     * Annotator backend: remote for the BioPortal annotator, dictionary for the local dictionary
+     */
+    private AnnotatorBackend annotator = AnnotatorBackend.REMOTE;
+
+    /**
+     * Whether the annotator only returns the longest of the overlapping matches. The other matches are dropped
+     * locally anyway, turn it off to allow the batching of the annotator requests.
+     */
+    private boolean annotatorLongestOnly = true;
+
+    /**
+     * Maximum number of characters of the texts packed into one annotator request, 0 sends every text alone.
+     * Only used when annotator-longest-only is off, since a longest match across two texts would hide their own.
+     */
+    private int annotatorBatchChars = 0;
+
+    /**
+     * How long a short text waits for others to share its annotator request
+     */
+    private Duration annotatorBatchLinger = Duration.ofMillis(50);
+
+    /**
+     * Memory mapped snapshot of the synonym collection, read before Mongo when it exists
+     */
+    private String synonymSnapshotFile;
+
+    /**
+     * Write the synonym snapshot instead of enriching datasets
+     */
+    private boolean exportSynonymSnapshot = false;
+
+    /**
+     * How long BioPortal class lookups are reused, 0 disables the class cache
+     */
+    private Duration classCacheTtl = Duration.ofDays(90);
+
+    /**
+     * Maximum number of class lookups kept, the oldest ones are evicted first
+     */
+    private long classCacheMaxEntries = 500000;
+
     public String getDatabaseName() {
         return databaseName;
     }
@@ -35,12 +246,354 @@ public class DatasetEnrichmentTaskProperties {
         this.force = force;
     }
 
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getReadConcurrency() {
+        return readConcurrency;
+    }
+
+    public void setReadConcurrency(int readConcurrency) {
+        this.readConcurrency = readConcurrency;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public void setWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+    }
+
+    public Duration getWriteFlushInterval() {
+        return writeFlushInterval;
+    }
+
+    public void setWriteFlushInterval(Duration writeFlushInterval) {
+        this.writeFlushInterval = writeFlushInterval;
+    }
+
+    public int getReadBatchSize() {
+        return readBatchSize;
+    }
+
+    public void setReadBatchSize(int readBatchSize) {
+        this.readBatchSize = readBatchSize;
+    }
+
+    public int getResolveConcurrency() {
+        return resolveConcurrency;
+    }
+
+    public void setResolveConcurrency(int resolveConcurrency) {
+        this.resolveConcurrency = resolveConcurrency;
+    }
+
+    public int getWriteConcurrency() {
+        return writeConcurrency;
+    }
+
+    public void setWriteConcurrency(int writeConcurrency) {
+        this.writeConcurrency = writeConcurrency;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public int getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    public void setHttpMaxConnections(int httpMaxConnections) {
+        this.httpMaxConnections = httpMaxConnections;
+    }
+
+    public int getHttpMaxConnectionsPerRoute() {
+        return httpMaxConnectionsPerRoute;
+    }
+
+    public void setHttpMaxConnectionsPerRoute(int httpMaxConnectionsPerRoute) {
+        this.httpMaxConnectionsPerRoute = httpMaxConnectionsPerRoute;
+    }
+
+    public Duration getHttpConnectTimeout() {
+        return httpConnectTimeout;
+    }
+
+    public void setHttpConnectTimeout(Duration httpConnectTimeout) {
+        this.httpConnectTimeout = httpConnectTimeout;
+    }
+
+    public Duration getHttpReadTimeout() {
+        return httpReadTimeout;
+    }
+
+    public void setHttpReadTimeout(Duration httpReadTimeout) {
+        this.httpReadTimeout = httpReadTimeout;
+    }
+
+    public boolean isHttpCompression() {
+        return httpCompression;
+    }
+
+    public void setHttpCompression(boolean httpCompression) {
+        this.httpCompression = httpCompression;
+    }
+
+    public double getMaxRequestRate() {
+        return maxRequestRate;
+    }
+
+    public void setMaxRequestRate(double maxRequestRate) {
+        this.maxRequestRate = maxRequestRate;
+    }
+
+    public double getMinRequestRate() {
+        return minRequestRate;
+    }
+
+    public void setMinRequestRate(double minRequestRate) {
+        this.minRequestRate = minRequestRate;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    public Duration getCircuitBreakerOpenDuration() {
+        return circuitBreakerOpenDuration;
+    }
+
+    public void setCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration) {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public void setShardIndex(int shardIndex) {
+        this.shardIndex = shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public int getShuffleWindow() {
+        return shuffleWindow;
+    }
+
+    public void setShuffleWindow(int shuffleWindow) {
+        this.shuffleWindow = shuffleWindow;
+    }
+
+    public Duration getDatasetTimeout() {
+        return datasetTimeout;
+    }
+
+    public void setDatasetTimeout(Duration datasetTimeout) {
+        this.datasetTimeout = datasetTimeout;
+    }
+
+    public boolean isHedgeAnnotatorRequests() {
+        return hedgeAnnotatorRequests;
+    }
+
+    public void setHedgeAnnotatorRequests(boolean hedgeAnnotatorRequests) {
+        this.hedgeAnnotatorRequests = hedgeAnnotatorRequests;
+    }
+
+    public int getSynonymCacheSize() {
+        return synonymCacheSize;
+    }
+
+    public void setSynonymCacheSize(int synonymCacheSize) {
+        this.synonymCacheSize = synonymCacheSize;
+    }
+
+    public Duration getAnnotatorCacheTtl() {
+        return annotatorCacheTtl;
+    }
+
+    public void setAnnotatorCacheTtl(Duration annotatorCacheTtl) {
+        this.annotatorCacheTtl = annotatorCacheTtl;
+    }
+
+    public Duration getNegativeLookupTtl() {
+        return negativeLookupTtl;
+    }
+
+    public void setNegativeLookupTtl(Duration negativeLookupTtl) {
+        this.negativeLookupTtl = negativeLookupTtl;
+    }
+
+    public Duration getFailedLookupTtl() {
+        return failedLookupTtl;
+    }
+
+    public void setFailedLookupTtl(Duration failedLookupTtl) {
+        this.failedLookupTtl = failedLookupTtl;
+    }
+
+    public String getDictionaryFile() {
+        return dictionaryFile;
+    }
+
+    public void setDictionaryFile(String dictionaryFile) {
+        this.dictionaryFile = dictionaryFile;
+    }
+
+    public List<String> getOntologyFiles() {
+        return ontologyFiles;
+    }
+
+    public void setOntologyFiles(List<String> ontologyFiles) {
+        this.ontologyFiles = ontologyFiles;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    public AnnotatorBackend getAnnotator() {
+        return annotator;
+    }
+
+    public void setAnnotator(AnnotatorBackend annotator) {
+        this.annotator = annotator;
+    }
+
+    public boolean isAnnotatorLongestOnly() {
+        return annotatorLongestOnly;
+    }
+
+    public void setAnnotatorLongestOnly(boolean annotatorLongestOnly) {
+        this.annotatorLongestOnly = annotatorLongestOnly;
+    }
+
+    public int getAnnotatorBatchChars() {
+        return annotatorBatchChars;
+    }
+
+    public void setAnnotatorBatchChars(int annotatorBatchChars) {
+        this.annotatorBatchChars = annotatorBatchChars;
+    }
+
+    public Duration getAnnotatorBatchLinger() {
+        return annotatorBatchLinger;
+    }
+
+    public void setAnnotatorBatchLinger(Duration annotatorBatchLinger) {
+        this.annotatorBatchLinger = annotatorBatchLinger;
+    }
+
+    public String getSynonymSnapshotFile() {
+        return synonymSnapshotFile;
+    }
+
+    public void setSynonymSnapshotFile(String synonymSnapshotFile) {
+        this.synonymSnapshotFile = synonymSnapshotFile;
+    }
+
+    public boolean isExportSynonymSnapshot() {
+        return exportSynonymSnapshot;
+    }
+
+    public void setExportSynonymSnapshot(boolean exportSynonymSnapshot) {
+        this.exportSynonymSnapshot = exportSynonymSnapshot;
+    }
+
+    public Duration getClassCacheTtl() {
+        return classCacheTtl;
+    }
+
+    public void setClassCacheTtl(Duration classCacheTtl) {
+        this.classCacheTtl = classCacheTtl;
+    }
+
+    public long getClassCacheMaxEntries() {
+        return classCacheMaxEntries;
+    }
+
+    public void setClassCacheMaxEntries(long classCacheMaxEntries) {
+        this.classCacheMaxEntries = classCacheMaxEntries;
+    }
+
     @Override
     public String toString() {
         return "DatasetEnrichmentTaskProperties{" +
                 "databaseName='" + databaseName + '\'' +
                 ", force=" + force +
                 ", overwrite=" + overwrite +
+                ", readConcurrency=" + readConcurrency +
+                ", readBatchSize=" + readBatchSize +
+                ", concurrency=" + concurrency +
+                ", resolveConcurrency=" + resolveConcurrency +
+                ", writeConcurrency=" + writeConcurrency +
+                ", writeBatchSize=" + writeBatchSize +
+                ", writeFlushInterval=" + writeFlushInterval +
+                ", queueSize=" + queueSize +
+                ", maxConcurrentRequests=" + maxConcurrentRequests +
+                ", httpMaxConnections=" + httpMaxConnections +
+                ", httpMaxConnectionsPerRoute=" + httpMaxConnectionsPerRoute +
+                ", httpConnectTimeout=" + httpConnectTimeout +
+                ", httpReadTimeout=" + httpReadTimeout +
+                ", httpCompression=" + httpCompression +
+                ", maxRequestRate=" + maxRequestRate +
+                ", minRequestRate=" + minRequestRate +
+                ", circuitBreakerFailureThreshold=" + circuitBreakerFailureThreshold +
+                ", circuitBreakerOpenDuration=" + circuitBreakerOpenDuration +
+                ", shardIndex=" + shardIndex +
+                ", shardCount=" + shardCount +
+                ", shuffleWindow=" + shuffleWindow +
+                ", datasetTimeout=" + datasetTimeout +
+                ", hedgeAnnotatorRequests=" + hedgeAnnotatorRequests +
+                ", synonymCacheSize=" + synonymCacheSize +
+                ", annotatorCacheTtl=" + annotatorCacheTtl +
+                ", negativeLookupTtl=" + negativeLookupTtl +
+                ", failedLookupTtl=" + failedLookupTtl +
+                ", dictionaryFile='" + dictionaryFile + '\'' +
+                ", ontologyFiles=" + ontologyFiles +
+                ", offline=" + offline +
+                ", annotator=" + annotator +
+                ", annotatorLongestOnly=" + annotatorLongestOnly +
+                ", annotatorBatchChars=" + annotatorBatchChars +
+                ", annotatorBatchLinger=" + annotatorBatchLinger +
+                ", synonymSnapshotFile='" + synonymSnapshotFile + '\'' +
+                ", exportSynonymSnapshot=" + exportSynonymSnapshot +
+                ", classCacheTtl=" + classCacheTtl +
+                ", classCacheMaxEntries=" + classCacheMaxEntries +
                 '}';
     }
 }
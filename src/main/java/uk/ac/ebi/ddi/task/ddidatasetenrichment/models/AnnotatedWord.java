@@ -0,0 +1,59 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import java.util.List;
+
+/**
+ * A word found by the annotator in a text, with the synonyms of the classes it matched
+ */
+public class AnnotatedWord {
+
+    private String text;
+
+    private int from;
+
+    private int to;
+
+    private List<String> synonyms;
+
+    public AnnotatedWord() {
+    }
+
+    public AnnotatedWord(String text, int from, int to, List<String> synonyms) {
+        this.text = text;
+        this.from = from;
+        this.to = to;
+        this.synonyms = synonyms;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public void setFrom(int from) {
+        this.from = from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public void setTo(int to) {
+        this.to = to;
+    }
+
+    public List<String> getSynonyms() {
+        return synonyms;
+    }
+
+    public void setSynonyms(List<String> synonyms) {
+        this.synonyms = synonyms;
+    }
+}
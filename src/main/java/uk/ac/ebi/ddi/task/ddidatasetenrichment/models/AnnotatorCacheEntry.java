@@ -0,0 +1,54 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Annotator result for one text, identified by the hash of the text and of the annotator parameters
+ */
+@Document(collection = "enrichment.annotator_cache")
+public class AnnotatorCacheEntry {
+
+    @Id
+    private String id;
+
+    private Date createdAt;
+
+    private List<AnnotatedWord> words;
+
+    public AnnotatorCacheEntry() {
+    }
+
+    public AnnotatorCacheEntry(String id, List<AnnotatedWord> words) {
+        this.id = id;
+        this.words = words;
+        this.createdAt = new Date();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<AnnotatedWord> getWords() {
+        return words;
+    }
+
+    public void setWords(List<AnnotatedWord> words) {
+        this.words = words;
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * BioPortal class lookup result, identified by the ontology and the class id
+ */
+@Document(collection = "enrichment.class_cache")
+public class ClassCacheEntry {
+
+    @Id
+    private String id;
+
+    private String key;
+
+    private String prefLabel;
+
+    private List<String> synonyms;
+
+    private Date createdAt;
+
+    public ClassCacheEntry() {
+    }
+
+    public ClassCacheEntry(String key, String prefLabel, List<String> synonyms) {
+        this.key = key;
+        this.prefLabel = prefLabel;
+        this.synonyms = synonyms;
+        this.createdAt = new Date();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getPrefLabel() {
+        return prefLabel;
+    }
+
+    public void setPrefLabel(String prefLabel) {
+        this.prefLabel = prefLabel;
+    }
+
+    public List<String> getSynonyms() {
+        return synonyms;
+    }
+
+    public void setSynonyms(List<String> synonyms) {
+        this.synonyms = synonyms;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
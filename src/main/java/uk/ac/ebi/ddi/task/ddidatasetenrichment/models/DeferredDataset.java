@@ -0,0 +1,81 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.EnrichmentUtils;
+
+import java.util.Date;
+
+/**
+ * A dataset which could not be enriched because BioPortal was unavailable, to be enriched first by the next run
+ */
+@Document(collection = "enrichment.deferred_datasets")
+public class DeferredDataset {
+
+    @Id
+    private String id;
+
+    private String accession;
+
+    private String database;
+
+    /** See {@link EnrichmentUtils#getShardHash(String, String)}, so the queue can be read one shard at a time */
+    private long shardHash;
+
+    private Date deferredAt;
+
+    public DeferredDataset() {
+    }
+
+    public DeferredDataset(String accession, String database) {
+        this.id = getId(database, accession);
+        this.accession = accession;
+        this.database = database;
+        this.shardHash = EnrichmentUtils.getShardHash(accession, database);
+        this.deferredAt = new Date();
+    }
+
+    public static String getId(String database, String accession) {
+        return database + ":" + accession;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public void setAccession(String accession) {
+        this.accession = accession;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+
+    public long getShardHash() {
+        return shardHash;
+    }
+
+    public void setShardHash(long shardHash) {
+        this.shardHash = shardHash;
+    }
+
+    public Date getDeferredAt() {
+        return deferredAt;
+    }
+
+    public void setDeferredAt(Date deferredAt) {
+        this.deferredAt = deferredAt;
+    }
+}
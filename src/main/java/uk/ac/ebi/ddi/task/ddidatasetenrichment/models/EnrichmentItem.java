@@ -0,0 +1,69 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import uk.ac.ebi.ddi.service.db.model.dataset.Dataset;
+import uk.ac.ebi.ddi.service.db.model.enrichment.DatasetEnrichmentInfo;
+
+import java.util.Map;
+
+/**
+ * A dataset travelling through the enrichment pipeline, together with the results of the stages it went through
+ */
+public class EnrichmentItem {
+
+    private Dataset dataset;
+
+    private Map<String, String> fields;
+
+    private DatasetEnrichmentInfo previousEnrichmentInfo;
+
+    private DatasetEnrichmentInfo enrichmentInfo;
+
+    private boolean changed;
+
+    private EnrichedDataset enrichedDataset;
+
+    public EnrichmentItem(Dataset dataset, Map<String, String> fields) {
+        this.dataset = dataset;
+        this.fields = fields;
+    }
+
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    public DatasetEnrichmentInfo getPreviousEnrichmentInfo() {
+        return previousEnrichmentInfo;
+    }
+
+    public void setPreviousEnrichmentInfo(DatasetEnrichmentInfo previousEnrichmentInfo) {
+        this.previousEnrichmentInfo = previousEnrichmentInfo;
+    }
+
+    public DatasetEnrichmentInfo getEnrichmentInfo() {
+        return enrichmentInfo;
+    }
+
+    public void setEnrichmentInfo(DatasetEnrichmentInfo enrichmentInfo) {
+        this.enrichmentInfo = enrichmentInfo;
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
+    public EnrichedDataset getEnrichedDataset() {
+        return enrichedDataset;
+    }
+
+    public void setEnrichedDataset(EnrichedDataset enrichedDataset) {
+        this.enrichedDataset = enrichedDataset;
+    }
+}
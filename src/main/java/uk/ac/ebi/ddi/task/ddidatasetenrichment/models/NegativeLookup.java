@@ -0,0 +1,71 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * A word for which BioPortal returned no synonyms, remembered so it is not looked up again for a while
+ */
+@Document(collection = "enrichment.negative_lookups")
+public class NegativeLookup {
+
+    public enum Outcome {
+        /** BioPortal does not know the word */
+        NO_ANNOTATION,
+        /** The classes of the word could not be resolved */
+        LOOKUP_FAILED
+    }
+
+    @Id
+    private String word;
+
+    private Outcome outcome;
+
+    private Date createdAt;
+
+    /** When Mongo removes the lookup */
+    private Date expireAt;
+
+    public NegativeLookup() {
+    }
+
+    public NegativeLookup(String word, Outcome outcome) {
+        this.word = word;
+        this.outcome = outcome;
+        this.createdAt = new Date();
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public void setWord(String word) {
+        this.word = word;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getExpireAt() {
+        return expireAt;
+    }
+
+    public void setExpireAt(Date expireAt) {
+        this.expireAt = expireAt;
+    }
+}
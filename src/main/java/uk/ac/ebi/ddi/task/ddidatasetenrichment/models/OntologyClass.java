@@ -0,0 +1,57 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class read from a local ontology dump, with its preferred label and synonyms
+ */
+public class OntologyClass {
+
+    private String ontology;
+
+    private String id;
+
+    private String prefLabel;
+
+    private List<String> synonyms = new ArrayList<>();
+
+    public OntologyClass(String ontology, String id) {
+        this.ontology = ontology;
+        this.id = id;
+    }
+
+    public String getOntology() {
+        return ontology;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPrefLabel() {
+        return prefLabel;
+    }
+
+    public void setPrefLabel(String prefLabel) {
+        this.prefLabel = prefLabel;
+    }
+
+    public List<String> getSynonyms() {
+        return synonyms;
+    }
+
+    public void setSynonyms(List<String> synonyms) {
+        this.synonyms = synonyms;
+    }
+
+    @Override
+    public String toString() {
+        return "OntologyClass{" +
+                "ontology='" + ontology + '\'' +
+                ", id='" + id + '\'' +
+                ", prefLabel='" + prefLabel + '\'' +
+                ", synonyms=" + synonyms +
+                '}';
+    }
+}
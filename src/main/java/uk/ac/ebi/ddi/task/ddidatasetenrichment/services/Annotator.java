@@ -0,0 +1,37 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Find the ontology terms in a text. The backend is chosen with enrichment.annotator:
+ * remote (BioPortal annotator, default) or dictionary (local dictionary built from ontology dumps).
+ */
+public interface Annotator {
+
+    /**
+     * @param text the text to annotate, already normalized
+     * @return the words found in the text, with 1-based inclusive positions like the BioPortal annotator,
+     * and the synonyms of the classes each word matched
+     */
+    CompletableFuture<Map<WordInField, Set<String>>> annotate(String text);
+
+    /**
+     * Annotate several texts at once, such as all the fields of a dataset, so that the backend can share the work
+     *
+     * @param texts the texts to annotate, already normalized
+     * @return the pending words of each text, keyed by text
+     */
+    default Map<String, CompletableFuture<Map<WordInField, Set<String>>>> annotate(Collection<String> texts) {
+        Map<String, CompletableFuture<Map<WordInField, Set<String>>>> results = new HashMap<>();
+        for (String text : texts) {
+            results.computeIfAbsent(text, this::annotate);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,132 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.AnnotatedWord;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.AnnotatorCacheEntry;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.EnrichmentUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of the annotator results. Many datasets share the same text (data protocols, abstracts of
+ * the same publication...), the entries are kept in Mongo so they are reused across task runs.
+ */
+@Service
+public class AnnotatorCacheService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnnotatorCacheService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private BioOntologyService bioOntologyService;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Let Mongo remove the expired entries, reads still check the age as the removal runs only once a minute
+     */
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(AnnotatorCacheEntry.class).ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC).expire(properties.getAnnotatorCacheTtl().getSeconds()));
+        } catch (RuntimeException e) {
+            // Typically an index created with another TTL, the entries are still ignored once expired
+            LOGGER.warn("Unable to create the expiry index of the annotator cache, {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Read the entries of all the texts in a single query
+     *
+     * @param texts the texts sent to the annotator
+     * @return the words found in each cached text, the texts not cached or whose entry expired are left out
+     */
+    public Map<String, Map<WordInField, Set<String>>> getAll(Collection<String> texts) {
+        Map<String, Map<WordInField, Set<String>>> cached = new HashMap<>();
+        if (!isEnabled() || texts.isEmpty()) {
+            return cached;
+        }
+        Map<String, String> keys = new HashMap<>();
+        for (String text : texts) {
+            keys.put(getKey(text), text);
+        }
+        List<AnnotatorCacheEntry> entries;
+        try {
+            entries = mongoTemplate.find(new Query(Criteria.where("_id").in(keys.keySet())),
+                    AnnotatorCacheEntry.class);
+        } catch (RuntimeException e) {
+            // Same as a miss, the texts are sent to the annotator
+            LOGGER.warn("Unable to read the annotator cache, {}", e.getMessage());
+            misses.addAndGet(keys.size());
+            return cached;
+        }
+        long expiry = System.currentTimeMillis() - properties.getAnnotatorCacheTtl().toMillis();
+        for (AnnotatorCacheEntry entry : entries) {
+            if (entry.getCreatedAt() == null || entry.getCreatedAt().getTime() < expiry) {
+                continue;
+            }
+            Map<WordInField, Set<String>> words = new HashMap<>();
+            for (AnnotatedWord word : entry.getWords()) {
+                words.put(new WordInField(word.getText(), word.getFrom(), word.getTo()),
+                        new HashSet<>(word.getSynonyms()));
+            }
+            cached.put(keys.get(entry.getId()), words);
+        }
+        hits.addAndGet(cached.size());
+        misses.addAndGet(keys.size() - cached.size());
+        return cached;
+    }
+
+    public void put(String text, Map<WordInField, Set<String>> words) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<AnnotatedWord> annotatedWords = new ArrayList<>();
+        for (Map.Entry<WordInField, Set<String>> word : words.entrySet()) {
+            WordInField key = word.getKey();
+            annotatedWords.add(new AnnotatedWord(key.getText(), key.getFrom(), key.getTo(),
+                    new ArrayList<>(word.getValue())));
+        }
+        try {
+            mongoTemplate.save(new AnnotatorCacheEntry(getKey(text), annotatedWords));
+        } catch (RuntimeException e) {
+            // The cache is only an optimisation, the enrichment goes on without it
+            LOGGER.warn("Unable to cache the annotator result, {}", e.getMessage());
+        }
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Annotator cache: hits={}, misses={}", hits.get(), misses.get());
+    }
+
+    private boolean isEnabled() {
+        return !properties.getAnnotatorCacheTtl().isZero() && !properties.getAnnotatorCacheTtl().isNegative();
+    }
+
+    private String getKey(String text) {
+        return EnrichmentUtils.sha256(bioOntologyService.getAnnotatorParameters() + "\n" + text);
+    }
+}
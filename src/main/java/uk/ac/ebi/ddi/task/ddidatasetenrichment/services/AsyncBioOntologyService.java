@@ -0,0 +1,363 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.AnnotatedOntologyQuery;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.SynonymQuery;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.AnnotationParser;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.Constants;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.Deadline;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.DeadlineExceededException;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.HedgedRequest;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.LatencyTracker;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous BioPortal client, on a non-blocking HttpAsyncClient. At most enrichment.max-concurrent-requests
+ * requests are in flight at the same time, the others wait in a queue, and no thread is held while a request
+ * waits, is in flight or waits for a retry. The responses are read by a small pool, which also runs the stages
+ * callers compose on the returned futures.
+ */
+@Service
+public class AsyncBioOntologyService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncBioOntologyService.class);
+
+    private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+
+    private static final int LATENCY_SAMPLES = 1000;
+
+    /** Latencies needed before hedging, so that the percentile means something */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private static final double HEDGE_PERCENTILE = 95;
+
+    @Autowired
+    private BioOntologyService bioOntologyService;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    /** Configured the way RestTemplate configures its JSON converter */
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private PoolingNHttpClientConnectionManager connectionManager;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    private RequestConfig requestConfig;
+
+    private ExecutorService executor;
+
+    private ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+
+    private int inFlight = 0;
+
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+
+    private final LatencyTracker annotatorLatencies = new LatencyTracker(LATENCY_SAMPLES);
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(InputStream response) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() throws IOReactorException {
+        ThreadFactory ioThreads = daemonThreads("bioportal-io-");
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout((int) properties.getHttpConnectTimeout().toMillis())
+                .setSoTimeout((int) properties.getHttpReadTimeout().toMillis())
+                .build();
+        // Pooled keep-alive connections, the responses are asked compressed and inflated when read
+        connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig, ioThreads));
+        connectionManager.setMaxTotal(properties.getHttpMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getHttpMaxConnectionsPerRoute());
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) properties.getHttpConnectTimeout().toMillis())
+                .setConnectionRequestTimeout((int) properties.getHttpConnectTimeout().toMillis())
+                .setSocketTimeout((int) properties.getHttpReadTimeout().toMillis())
+                .build();
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setThreadFactory(ioThreads)
+                .build();
+        httpClient.start();
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                daemonThreads("bioportal-"));
+        timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("bioportal-timer-"));
+        timer.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }, IDLE_CONNECTION_TIMEOUT_SECONDS, IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        httpClient.close();
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Annotate the text with the annotator, the words and the synonyms of their classes are read straight from the
+     * response stream. When enrichment.hedge-annotator-requests is set, the request is sent a second time if it is
+     * still running after the 95th percentile of the latest annotator latencies, and the first response is used.
+     */
+    public CompletableFuture<Map<WordInField, Set<String>>> getAnnotatedWords(String query) {
+        URI uri = bioOntologyService.getAnnotatorUri();
+        Supplier<CompletableFuture<Map<WordInField, Set<String>>>> call = () -> {
+            long start = System.nanoTime();
+            CompletableFuture<Map<WordInField, Set<String>>> words =
+                    execute(() -> getAnnotatorRequest(uri, query), AnnotationParser::parse);
+            words.thenRun(() -> annotatorLatencies.record(System.nanoTime() - start));
+            return words;
+        };
+        if (!properties.isHedgeAnnotatorRequests() || annotatorLatencies.getCount() < MIN_LATENCY_SAMPLES) {
+            return call.get();
+        }
+        return new HedgedRequest<>(Deadline.propagate(call), annotatorLatencies.getPercentile(HEDGE_PERCENTILE),
+                timer, this::isBusy).start();
+    }
+
+    public CompletableFuture<AnnotatedOntologyQuery[]> getAnnotatedTerms(String query, String[] ontologies) {
+        URI uri = bioOntologyService.getAnnotatedTermsUri(query, ontologies);
+        return execute(() -> new HttpGet(uri), response -> objectMapper.readValue(response,
+                AnnotatedOntologyQuery[].class));
+    }
+
+    public CompletableFuture<SynonymQuery> getAllSynonyms(String ontology, String term) {
+        URI uri = bioOntologyService.getAllSynonymsUri(ontology, term);
+        LOGGER.debug(uri.toString());
+        return execute(() -> new HttpGet(uri), response -> objectMapper.readValue(response, SynonymQuery.class));
+    }
+
+    private static HttpRequestBase getAnnotatorRequest(URI uri, String query) {
+        HttpPost request = new HttpPost(uri);
+        request.setHeader(HttpHeaders.AUTHORIZATION, "apikey token=" + Constants.OBO_KEY);
+        request.setEntity(new UrlEncodedFormEntity(Collections.singletonList(new BasicNameValuePair("text", query)),
+                StandardCharsets.UTF_8));
+        return request;
+    }
+
+    /**
+     * Send the request with the retries, rate limiting and circuit breaking of {@link BioOntologyService}, a new
+     * request being created for each attempt
+     */
+    private <T> CompletableFuture<T> execute(Supplier<HttpRequestBase> request, ResponseReader<T> reader) {
+        return bioOntologyService.executeAsync(() -> send(request.get(), reader), timer);
+    }
+
+    /**
+     * Send the request once there is room in flight for it. Requests made for a dataset do not wait for a
+     * response past the deadline of the dataset, and cancelling the returned future aborts the request.
+     */
+    private <T> CompletableFuture<T> send(HttpRequestBase request, ResponseReader<T> reader) {
+        CompletableFuture<T> response = new CompletableFuture<>();
+        Long deadline = Deadline.current();
+        whenInFlight(() -> {
+            long remaining = deadline == null ? Long.MAX_VALUE
+                    : TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (response.isDone() || remaining <= 0) {
+                response.completeExceptionally(new DeadlineExceededException());
+                release();
+                return;
+            }
+            if (remaining < requestConfig.getSocketTimeout()) {
+                request.setConfig(RequestConfig.copy(requestConfig).setSocketTimeout((int) remaining).build());
+            }
+            if (properties.isHttpCompression()) {
+                request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            }
+            Future<HttpResponse> exchange;
+            try {
+                exchange = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse result) {
+                        complete(response, () -> read(request, result, reader));
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        complete(response, () -> {
+                            throw new ResourceAccessException("I/O error on " + request.getMethod()
+                                    + " request for \"" + request.getURI() + "\": " + e.getMessage(),
+                                    e instanceof IOException ? (IOException) e : new IOException(e));
+                        });
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        complete(response, () -> {
+                            throw new CancellationException();
+                        });
+                    }
+                });
+            } catch (RuntimeException e) {
+                response.completeExceptionally(e);
+                release();
+                return;
+            }
+            response.whenComplete((value, e) -> {
+                if (response.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        });
+        return response;
+    }
+
+    /**
+     * Complete the response in the pool, the I/O threads only move bytes
+     */
+    private <T> void complete(CompletableFuture<T> response, Supplier<T> outcome) {
+        executor.execute(() -> {
+            release();
+            try {
+                response.complete(outcome.get());
+            } catch (RuntimeException e) {
+                response.completeExceptionally(e);
+            }
+        });
+    }
+
+    private <T> T read(HttpRequestBase request, HttpResponse response, ResponseReader<T> reader) {
+        try {
+            HttpEntity entity = response.getEntity();
+            Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+            if (entity != null && encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+                entity = new GzipDecompressingEntity(entity);
+            }
+            if (response.getStatusLine().getStatusCode() >= 400) {
+                throw getError(response, entity != null ? EntityUtils.toByteArray(entity) : new byte[0]);
+            }
+            if (entity == null) {
+                return null;
+            }
+            try (InputStream content = entity.getContent()) {
+                return reader.read(content);
+            }
+        } catch (IOException e) {
+            throw new ResourceAccessException("I/O error on " + request.getMethod() + " request for \""
+                    + request.getURI() + "\": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the exception RestTemplate would throw for the response
+     */
+    private static RestClientResponseException getError(HttpResponse response, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) {
+            headers.add(header.getName(), header.getValue());
+        }
+        StatusLine statusLine = response.getStatusLine();
+        HttpStatus status = HttpStatus.resolve(statusLine.getStatusCode());
+        if (status == null) {
+            return new UnknownHttpStatusCodeException(statusLine.getStatusCode(), statusLine.getReasonPhrase(),
+                    headers, body, StandardCharsets.UTF_8);
+        }
+        if (status.is4xxClientError()) {
+            return HttpClientErrorException.create(status, statusLine.getReasonPhrase(), headers, body,
+                    StandardCharsets.UTF_8);
+        }
+        return HttpServerErrorException.create(status, statusLine.getReasonPhrase(), headers, body,
+                StandardCharsets.UTF_8);
+    }
+
+    private void whenInFlight(Runnable send) {
+        synchronized (lock) {
+            if (inFlight >= properties.getMaxConcurrentRequests()) {
+                queued.add(send);
+                return;
+            }
+            inFlight++;
+        }
+        send.run();
+    }
+
+    /**
+     * Hand the room of a request over to the next one in the queue
+     */
+    private void release() {
+        Runnable next;
+        synchronized (lock) {
+            next = queued.poll();
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    private boolean isBusy() {
+        synchronized (lock) {
+            return !queued.isEmpty();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
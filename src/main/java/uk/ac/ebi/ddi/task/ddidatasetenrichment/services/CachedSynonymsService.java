@@ -0,0 +1,270 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import com.mongodb.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.enrichment.Synonym;
+import uk.ac.ebi.ddi.service.db.service.enrichment.ISynonymsService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.LruCache;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.SynonymSnapshot;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.WriteBehindBuffer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In memory cache in front of {@link ISynonymsService}. The same few thousand words are looked up for every
+ * dataset, so known words are served from memory, then from the memory mapped synonym snapshot when there is one,
+ * and only unknown words go to Mongo. Words Mongo does not have are remembered too, until they are written.
+ * All the writes go through this class to keep the cache consistent with the collection. Synonym updates are
+ * merged per word and written as bulk upserts, only when they add synonyms the word did not have yet. The cache
+ * only holds what the collection has, the additions waiting to be written are kept apart until they are.
+ */
+@Service
+public class CachedSynonymsService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedSynonymsService.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    /** Marks the words checked in Mongo and found absent, so they are not read again until they are written */
+    private static final List<String> ABSENT = Collections.unmodifiableList(new ArrayList<>());
+
+    @Autowired
+    private ISynonymsService synonymsService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private LruCache<String, List<String>> cache;
+
+    private SynonymSnapshot snapshot;
+
+    /** Words written during the run, the snapshot is out of date for them */
+    private final Set<String> modifiedWords = ConcurrentHashMap.newKeySet();
+
+    /** Synonyms added to the words and still waiting in the buffer, they are removed once written or dropped */
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>();
+
+    private WriteBehindBuffer<Synonym> buffer;
+
+    /** Guards of the cache entries, so a miss cannot put back a list which a concurrent write has replaced */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @PostConstruct
+    public void init() throws IOException {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        cache = new LruCache<>(properties.getSynonymCacheSize());
+        buffer = new WriteBehindBuffer<>("synonym", properties.getWriteBatchSize(),
+                properties.getWriteFlushInterval(), this::write, this::onDropped);
+        if (properties.getSynonymSnapshotFile() != null && !properties.isExportSynonymSnapshot()) {
+            Path file = Paths.get(properties.getSynonymSnapshotFile());
+            if (Files.exists(file)) {
+                snapshot = SynonymSnapshot.open(file);
+                LOGGER.info("Synonym snapshot {} mapped with {} words", file, snapshot.size());
+            } else {
+                LOGGER.warn("Synonym snapshot {} not found", file);
+            }
+        }
+    }
+
+    /**
+     * Get the synonyms of a word which is already in the database, with the additions still waiting to be written
+     *
+     * @param word to retrieve the given synonyms
+     * @return the list of synonyms, or null if the word is not in the database yet
+     */
+    public List<String> getSynonyms(String word) {
+        return withPending(word, getStoredSynonyms(word, cache.get(word)));
+    }
+
+    public Synonym insert(String word, List<String> synonyms) {
+        synchronized (getLock(word)) {
+            modifiedWords.add(word);
+            Synonym synonym = synonymsService.insert(word, synonyms);
+            if (synonym != null && synonym.getSynonyms() != null) {
+                cache.put(word, synonym.getSynonyms());
+            } else {
+                cache.remove(word);
+            }
+            return synonym;
+        }
+    }
+
+    /**
+     * Queue the addition of synonyms to a word. Synonyms the word already has, stored or pending, are dropped, so
+     * the same update repeated for every occurrence of the word is only written once.
+     */
+    public void update(Synonym synonym) {
+        String word = synonym.getLabel();
+        if (synonym.getSynonyms() == null || synonym.getSynonyms().isEmpty()) {
+            return;
+        }
+        List<String> added;
+        synchronized (getLock(word)) {
+            List<String> known = withPending(word, getStoredSynonyms(word, cache.peek(word)));
+            Set<String> knownSet = known == null ? Collections.emptySet() : new HashSet<>(known);
+            added = synonym.getSynonyms().stream().distinct().filter(x -> !knownSet.contains(x))
+                    .collect(Collectors.toList());
+            if (added.isEmpty()) {
+                return;
+            }
+            pending.computeIfAbsent(word, x -> ConcurrentHashMap.newKeySet()).addAll(added);
+        }
+        buffer.add(new Synonym(word, added));
+    }
+
+    /**
+     * Write all the pending synonym updates
+     */
+    public void flush() {
+        buffer.flush();
+    }
+
+    private Object getLock(String word) {
+        return locks[Math.floorMod(word.hashCode(), locks.length)];
+    }
+
+    /**
+     * @param cached the synonyms of the word in the cache, if any
+     * @return the synonyms of the word stored in the database, or null if the word is not there
+     */
+    private List<String> getStoredSynonyms(String word, List<String> cached) {
+        if (cached != null) {
+            return cached == ABSENT ? null : cached;
+        }
+        if (snapshot != null && !modifiedWords.contains(word)) {
+            List<String> synonyms = snapshot.get(word);
+            if (synonyms != null) {
+                return synonyms;
+            }
+        }
+        synchronized (getLock(word)) {
+            List<String> synonyms = cache.peek(word);
+            if (synonyms != null) {
+                return synonyms == ABSENT ? null : synonyms;
+            }
+            // A single round trip, a word which is not in the collection has no document
+            Synonym stored = mongoTemplate.findOne(new Query(Criteria.where("label").is(word)), Synonym.class);
+            if (stored == null) {
+                cache.put(word, ABSENT);
+                return null;
+            }
+            synonyms = stored.getSynonyms() == null ? Collections.emptyList() : stored.getSynonyms();
+            cache.put(word, synonyms);
+            return synonyms;
+        }
+    }
+
+    private List<String> withPending(String word, List<String> synonyms) {
+        Set<String> pendingSynonyms = pending.get(word);
+        if (pendingSynonyms == null || (synonyms != null && synonyms.containsAll(pendingSynonyms))) {
+            return synonyms;
+        }
+        Set<String> merged = synonyms == null ? new LinkedHashSet<>() : new LinkedHashSet<>(synonyms);
+        merged.addAll(pendingSynonyms);
+        return new ArrayList<>(merged);
+    }
+
+    private List<Synonym> write(List<Synonym> updates) {
+        Map<String, Set<String>> merged = new LinkedHashMap<>();
+        for (Synonym update : updates) {
+            merged.computeIfAbsent(update.getLabel(), x -> new LinkedHashSet<>()).addAll(update.getSynonyms());
+        }
+        List<String> words = new ArrayList<>(merged.keySet());
+        List<Pair<Query, Update>> upserts = words.stream()
+                .map(x -> Pair.of(new Query(Criteria.where("label").is(x)),
+                        new Update().addToSet("synonyms").each(merged.get(x).toArray())))
+                .collect(Collectors.toList());
+        Set<String> failedWords = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Synonym.class).upsert(upserts).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                String word = words.get(error.getIndex());
+                LOGGER.error("Exception occurred when updating the synonyms of {}, {}", word, error.getMessage());
+                failedWords.add(word);
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : merged.entrySet()) {
+            if (!failedWords.contains(entry.getKey())) {
+                onWritten(entry.getKey(), entry.getValue());
+            }
+        }
+        return updates.stream().filter(x -> failedWords.contains(x.getLabel())).collect(Collectors.toList());
+    }
+
+    /**
+     * The synonyms are stored, they are part of the cached entry of the word and no longer pending
+     */
+    private void onWritten(String word, Set<String> synonyms) {
+        synchronized (getLock(word)) {
+            modifiedWords.add(word);
+            List<String> cached = cache.peek(word);
+            if (cached != null) {
+                // The upsert created the word if it was absent
+                Set<String> stored = new LinkedHashSet<>(cached);
+                stored.addAll(synonyms);
+                cache.put(word, new ArrayList<>(stored));
+            }
+            removePending(word, synonyms);
+        }
+    }
+
+    /**
+     * The synonyms could not be stored, they will be added again by the next update of the word
+     */
+    private void onDropped(List<Synonym> updates) {
+        for (Synonym update : updates) {
+            synchronized (getLock(update.getLabel())) {
+                removePending(update.getLabel(), update.getSynonyms());
+            }
+        }
+    }
+
+    private void removePending(String word, Collection<String> synonyms) {
+        pending.computeIfPresent(word, (key, value) -> {
+            value.removeAll(synonyms);
+            return value.isEmpty() ? null : value;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        buffer.close();
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Synonym cache: {}, updates: {}", cache, buffer);
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.ClassCacheEntry;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.SynonymQuery;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.SingleFlight;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of the BioPortal class lookups. Ontology classes rarely change, so their synonyms are kept
+ * in a capped Mongo collection: the oldest entries are evicted once enrichment.class-cache-max-entries is
+ * reached, and entries older than enrichment.class-cache-ttl are ignored.
+ * The collection is only appended to, a class looked up again after expiry gets a newer entry.
+ */
+@Service
+public class ClassCacheService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassCacheService.class);
+
+    /** Estimated average size of an entry, used to size the capped collection */
+    private static final long ENTRY_SIZE = 4096;
+
+    @Autowired
+    private AsyncBioOntologyService asyncBioOntologyService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private final SingleFlight<String, SynonymQuery> lookups = new SingleFlight<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            if (!mongoTemplate.collectionExists(ClassCacheEntry.class)) {
+                // Bounded by the number of entries, unless they are larger than estimated and fill the size first
+                long maxEntries = properties.getClassCacheMaxEntries();
+                mongoTemplate.createCollection(ClassCacheEntry.class,
+                        CollectionOptions.empty().capped().size(maxEntries * ENTRY_SIZE).maxDocuments(maxEntries));
+            }
+            mongoTemplate.indexOps(ClassCacheEntry.class)
+                    .ensureIndex(new Index().on("key", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC));
+        } catch (RuntimeException e) {
+            // The lookups go on, get and put treat their errors as misses
+            LOGGER.warn("Unable to set up the class cache, {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Same as {@link AsyncBioOntologyService#getAllSynonyms(String, String)}, answered from the cache when possible.
+     * Concurrent lookups of the same class share the same request.
+     */
+    public CompletableFuture<SynonymQuery> getAllSynonyms(String ontology, String term) {
+        String key = ontology + "/" + term;
+        return lookups.execute(key, () -> lookup(key, ontology, term));
+    }
+
+    private CompletableFuture<SynonymQuery> lookup(String key, String ontology, String term) {
+        if (!isEnabled()) {
+            return asyncBioOntologyService.getAllSynonyms(ontology, term);
+        }
+        SynonymQuery cached = get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.incrementAndGet();
+        return asyncBioOntologyService.getAllSynonyms(ontology, term).thenApply(output -> {
+            if (output != null) {
+                put(key, output);
+            }
+            return output;
+        });
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Class cache: hits={}, misses={}", hits.get(), misses.get());
+    }
+
+    private SynonymQuery get(String key) {
+        Date expiry = new Date(System.currentTimeMillis() - properties.getClassCacheTtl().toMillis());
+        Query query = new Query(Criteria.where("key").is(key).and("createdAt").gte(expiry))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        ClassCacheEntry entry;
+        try {
+            entry = mongoTemplate.findOne(query, ClassCacheEntry.class);
+        } catch (RuntimeException e) {
+            // Same as a miss, the class is looked up in BioPortal
+            LOGGER.warn("Unable to read the class cache, {}", e.getMessage());
+            return null;
+        }
+        if (entry == null) {
+            return null;
+        }
+        SynonymQuery output = new SynonymQuery();
+        output.setPrefLabel(entry.getPrefLabel());
+        output.setSynonyms(entry.getSynonyms() == null ? new String[0] : entry.getSynonyms().toArray(new String[0]));
+        return output;
+    }
+
+    private void put(String key, SynonymQuery output) {
+        try {
+            mongoTemplate.insert(new ClassCacheEntry(key, output.getPrefLabel(),
+                    output.getSynonyms() == null ? new ArrayList<>() : Arrays.asList(output.getSynonyms())));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to cache the class {}, {}", key, e.getMessage());
+        }
+    }
+
+    private boolean isEnabled() {
+        return !properties.getClassCacheTtl().isZero() && !properties.getClassCacheTtl().isNegative();
+    }
+}
@@ -0,0 +1,157 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import com.mongodb.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.dataset.Dataset;
+import uk.ac.ebi.ddi.service.db.utils.DatasetCategory;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.WriteBehindBuffer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Dataset reads and writes done a whole batch at a time, instead of one round trip per dataset through
+ * IDatasetService.
+ * Updates are buffered and flushed as one unordered bulk operation once enrichment.write-batch-size of them
+ * are pending, or every enrichment.write-flush-interval otherwise. They only set the given additional fields
+ * and the status, the rest of the document is left untouched.
+ */
+@Service
+public class DatasetBulkService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetBulkService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private WriteBehindBuffer<PendingUpdate> buffer;
+
+    @PostConstruct
+    public void init() {
+        buffer = new WriteBehindBuffer<>("dataset", properties.getWriteBatchSize(),
+                properties.getWriteFlushInterval(), this::write);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        buffer.close();
+    }
+
+    /**
+     * Stream the datasets to enrich from a cursor, only their accession, database and status are read.
+     *
+     * @param database the database to enrich, or null for all of them
+     * @param force whether all the datasets are enriched, or only the ones not enriched since their last change
+     */
+    public CloseableIterator<Dataset> streamCandidates(String database, boolean force) {
+        return mongoTemplate.stream(getCandidatesQuery(database, force), Dataset.class);
+    }
+
+    public long countCandidates(String database, boolean force) {
+        return mongoTemplate.count(getCandidatesQuery(database, force), Dataset.class);
+    }
+
+    private Query getCandidatesQuery(String database, boolean force) {
+        Query query = new Query();
+        if (database != null) {
+            query.addCriteria(Criteria.where("database").is(database));
+        }
+        if (!force) {
+            query.addCriteria(Criteria.where("currentStatus").in(DatasetCategory.ANNOTATED.getType(),
+                    DatasetCategory.INSERTED.getType(), DatasetCategory.UPDATED.getType()));
+        }
+        query.fields().include("accession").include("database").include("currentStatus");
+        // The cursor stays idle while the pipeline is full
+        query.noCursorTimeout();
+        return query;
+    }
+
+    /**
+     * Read the full documents of a batch of datasets, with one query per database in the batch.
+     * Datasets which no longer exist are left out of the result.
+     */
+    public List<Dataset> read(List<Dataset> batch) {
+        Map<String, List<String>> accessionsByDatabase = batch.stream()
+                .collect(Collectors.groupingBy(Dataset::getDatabase, LinkedHashMap::new,
+                        Collectors.mapping(Dataset::getAccession, Collectors.toList())));
+        List<Dataset> result = new ArrayList<>(batch.size());
+        for (Map.Entry<String, List<String>> entry : accessionsByDatabase.entrySet()) {
+            Query query = new Query(Criteria.where("database").is(entry.getKey())
+                    .and("accession").in(entry.getValue()));
+            result.addAll(mongoTemplate.find(query, Dataset.class));
+        }
+        return result;
+    }
+
+    /**
+     * Queue the update of some additional fields and of the status of a dataset
+     */
+    public void update(Dataset dataset, Map<String, Set<String>> additional, String currentStatus) {
+        Update update = new Update().set("currentStatus", currentStatus);
+        additional.forEach((key, value) -> update.set("additional." + key, value));
+        Query query = new Query(Criteria.where("_id").is(dataset.getId()));
+        buffer.add(new PendingUpdate(dataset.getAccession(), Pair.of(query, update)));
+    }
+
+    /**
+     * Write all the pending updates
+     */
+    public void flush() {
+        buffer.flush();
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Dataset updates: {}", buffer);
+    }
+
+    private List<PendingUpdate> write(List<PendingUpdate> updates) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Dataset.class)
+                    .updateOne(updates.stream().map(x -> x.update).collect(Collectors.toList()))
+                    .execute();
+            return Collections.emptyList();
+        } catch (BulkOperationException e) {
+            List<PendingUpdate> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                LOGGER.error("Exception occurred when updating dataset {}, {}",
+                        updates.get(error.getIndex()).accession, error.getMessage());
+                failed.add(updates.get(error.getIndex()));
+            }
+            return failed;
+        }
+    }
+
+    private static class PendingUpdate {
+
+        private final String accession;
+
+        private final Pair<Query, Update> update;
+
+        PendingUpdate(String accession, Pair<Query, Update> update) {
+            this.accession = accession;
+            this.update = update;
+        }
+    }
+}
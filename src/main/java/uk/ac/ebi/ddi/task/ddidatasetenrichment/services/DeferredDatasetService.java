@@ -0,0 +1,74 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.dataset.Dataset;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.DeferredDataset;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent queue of the datasets parked while BioPortal was unavailable
+ */
+@Service
+public class DeferredDatasetService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeferredDatasetService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final AtomicLong parked = new AtomicLong();
+
+    public void park(Dataset dataset) {
+        try {
+            mongoTemplate.save(new DeferredDataset(dataset.getAccession(), dataset.getDatabase()));
+            parked.incrementAndGet();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to defer dataset {}, {}", dataset.getAccession(), e.getMessage());
+        }
+    }
+
+    /**
+     * Take the parked datasets of a shard out of the queue, the other ones stay in the queue
+     *
+     * @param database the database to enrich, or null for all of them
+     * @return the accession and database of the datasets taken
+     */
+    public List<Dataset> drain(String database, int shardIndex, int shardCount) {
+        Query query = new Query();
+        if (database != null) {
+            query.addCriteria(Criteria.where("database").is(database));
+        }
+        if (shardCount > 1) {
+            query.addCriteria(Criteria.where("shardHash").mod(shardCount, shardIndex));
+        }
+        List<Dataset> datasets = mongoTemplate.find(query, DeferredDataset.class)
+                .stream()
+                .map(x -> {
+                    Dataset dataset = new Dataset();
+                    dataset.setAccession(x.getAccession());
+                    dataset.setDatabase(x.getDatabase());
+                    return dataset;
+                })
+                .collect(Collectors.toList());
+        if (!datasets.isEmpty()) {
+            List<String> ids = datasets.stream()
+                    .map(x -> DeferredDataset.getId(x.getDatabase(), x.getAccession()))
+                    .collect(Collectors.toList());
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), DeferredDataset.class);
+        }
+        return datasets;
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Deferred datasets: {} parked for the next run", parked.get());
+    }
+}
@@ -0,0 +1,99 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.OntologyClass;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.AhoCorasick;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Annotate the texts in process with an Aho-Corasick automaton built over the labels and synonyms of the local
+ * dictionary. Like the remote annotator called with whole_word_only and longest_only, matches must start and end
+ * on word boundaries and matches contained in a longer one are dropped.
+ */
+@Service
+@ConditionalOnProperty(name = "enrichment.annotator", havingValue = "dictionary")
+public class DictionaryAnnotator implements Annotator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryAnnotator.class);
+
+    @Autowired
+    private OntologyDictionary ontologyDictionary;
+
+    private List<String> terms;
+
+    private AhoCorasick automaton;
+
+    @PostConstruct
+    public void init() {
+        if (!ontologyDictionary.isLoaded()) {
+            throw new IllegalStateException("The dictionary annotator needs enrichment.dictionary-file");
+        }
+        terms = new ArrayList<>(ontologyDictionary.getClassesByTerm().keySet());
+        automaton = new AhoCorasick(terms);
+        LOGGER.info("Dictionary annotator ready with {} terms", terms.size());
+    }
+
+    @Override
+    public CompletableFuture<Map<WordInField, Set<String>>> annotate(String text) {
+        // CPU bound, the fields are spread over the common pool
+        return CompletableFuture.supplyAsync(() -> findWords(text));
+    }
+
+    private Map<WordInField, Set<String>> findWords(String text) {
+        // Match on a lower case copy of the text where white space runs are collapsed, like the dictionary terms,
+        // and keep the position of each character in the original text
+        StringBuilder normalized = new StringBuilder(text.length());
+        int[] positions = new int[text.length()];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (normalized.length() == 0 || normalized.charAt(normalized.length() - 1) == ' ') {
+                    continue;
+                }
+                c = ' ';
+            }
+            positions[normalized.length()] = i;
+            normalized.append(Character.toLowerCase(c));
+        }
+
+        List<AhoCorasick.Match> matches = new ArrayList<>();
+        for (AhoCorasick.Match match : automaton.findAll(normalized)) {
+            if (isWordBoundary(normalized, match.getStart() - 1) && isWordBoundary(normalized, match.getEnd())) {
+                matches.add(match);
+            }
+        }
+        // Longest only: sorted by start then longest first, a match ending before the furthest end seen so far
+        // is inside a longer match
+        matches.sort(Comparator.comparingInt(AhoCorasick.Match::getStart)
+                .thenComparing(Comparator.comparingInt(AhoCorasick.Match::getEnd).reversed()));
+        Map<WordInField, Set<String>> words = new HashMap<>();
+        int furthestEnd = -1;
+        for (AhoCorasick.Match match : matches) {
+            if (match.getEnd() <= furthestEnd) {
+                continue;
+            }
+            furthestEnd = match.getEnd();
+            int from = positions[match.getStart()];
+            int to = positions[match.getEnd() - 1];
+            Set<String> synonyms = new HashSet<>();
+            String term = terms.get(match.getPattern());
+            for (OntologyClass ontologyClass : ontologyDictionary.getClassesByTerm().get(term)) {
+                synonyms.addAll(ontologyClass.getSynonyms());
+            }
+            words.put(new WordInField(text.substring(from, to + 1), from + 1, to + 1), synonyms);
+        }
+        return words;
+    }
+
+    private static boolean isWordBoundary(CharSequence text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+}
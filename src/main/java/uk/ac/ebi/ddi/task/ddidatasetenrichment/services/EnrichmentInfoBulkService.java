@@ -0,0 +1,143 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import com.mongodb.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.dataset.Dataset;
+import uk.ac.ebi.ddi.service.db.model.enrichment.DatasetEnrichmentInfo;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.WriteBehindBuffer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Enrichment info reads and writes done a whole batch of datasets at a time, instead of the getLatest and
+ * insert round trips of IEnrichmentInfoService for every dataset.
+ * New enrichment infos are buffered like the dataset updates of {@link DatasetBulkService}, and inserted with one
+ * unordered bulk operation so that a bad document does not prevent the insertion of the others.
+ */
+@Service
+public class EnrichmentInfoBulkService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnrichmentInfoBulkService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private WriteBehindBuffer<PendingInsert> buffer;
+
+    @PostConstruct
+    public void init() {
+        buffer = new WriteBehindBuffer<>("enrichment-info", properties.getWriteBatchSize(),
+                properties.getWriteFlushInterval(), this::write);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        buffer.close();
+    }
+
+    /**
+     * Latest enrichment info of each dataset of a batch, with one query per database in the batch
+     *
+     * @return the enrichment infos by {@link #key(String, String)}, datasets never enriched are missing
+     */
+    public Map<String, DatasetEnrichmentInfo> getLatest(List<Dataset> batch) {
+        Map<String, List<String>> accessionsByDatabase = batch.stream()
+                .collect(Collectors.groupingBy(Dataset::getDatabase, LinkedHashMap::new,
+                        Collectors.mapping(Dataset::getAccession, Collectors.toList())));
+        Map<String, DatasetEnrichmentInfo> result = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : accessionsByDatabase.entrySet()) {
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("database").is(entry.getKey())
+                            .and("accession").in(entry.getValue())),
+                    Aggregation.sort(Sort.Direction.DESC, "enrichTime"),
+                    Aggregation.group("accession").first(Aggregation.ROOT).as("latest"),
+                    Aggregation.replaceRoot("latest"));
+            mongoTemplate.aggregate(aggregation, DatasetEnrichmentInfo.class, DatasetEnrichmentInfo.class)
+                    .forEach(x -> result.put(key(x.getDatabase(), x.getAccession()), x));
+        }
+        return result;
+    }
+
+    public static String key(String database, String accession) {
+        return database + ":" + accession;
+    }
+
+    /**
+     * Queue the insertion of an enrichment info
+     *
+     * @param onInserted run once the enrichment info is stored, not run if it could not be
+     */
+    public void insert(DatasetEnrichmentInfo enrichmentInfo, Runnable onInserted) {
+        buffer.add(new PendingInsert(enrichmentInfo, onInserted));
+    }
+
+    /**
+     * Write all the pending enrichment infos
+     */
+    public void flush() {
+        buffer.flush();
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Enrichment info inserts: {}", buffer);
+    }
+
+    private List<PendingInsert> write(List<PendingInsert> inserts) {
+        List<PendingInsert> failed = new ArrayList<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DatasetEnrichmentInfo.class)
+                    .insert(inserts.stream().map(x -> x.enrichmentInfo).collect(Collectors.toList()))
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                PendingInsert insert = inserts.get(error.getIndex());
+                LOGGER.error("Exception occurred when inserting the enrichment info of dataset {}, {}",
+                        insert.enrichmentInfo.getAccession(), error.getMessage());
+                failed.add(insert);
+            }
+        }
+        for (PendingInsert insert : inserts) {
+            if (!failed.contains(insert)) {
+                try {
+                    insert.onInserted.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Exception occurred after inserting the enrichment info of dataset {},",
+                            insert.enrichmentInfo.getAccession(), e);
+                }
+            }
+        }
+        return failed;
+    }
+
+    private static class PendingInsert {
+
+        private final DatasetEnrichmentInfo enrichmentInfo;
+
+        private final Runnable onInserted;
+
+        PendingInsert(DatasetEnrichmentInfo enrichmentInfo, Runnable onInserted) {
+            this.enrichmentInfo = enrichmentInfo;
+            this.onInserted = onInserted;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
 
 
-import com.fasterxml.jackson.databind.JsonNode;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -10,19 +9,24 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
-import uk.ac.ebi.ddi.service.db.model.dataset.Dataset;
 import uk.ac.ebi.ddi.service.db.model.enrichment.DatasetEnrichmentInfo;
 import uk.ac.ebi.ddi.service.db.model.enrichment.Synonym;
 import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
-import uk.ac.ebi.ddi.service.db.service.enrichment.IEnrichmentInfoService;
-import uk.ac.ebi.ddi.service.db.service.enrichment.ISynonymsService;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.AnnotatedOntologyQuery;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.Annotation;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.EnrichedDataset;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.EnrichmentItem;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.NegativeLookup;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.SynonymQuery;
 import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.Constants;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.Deadline;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.EnrichmentUtils;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.FutureUtils;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.SingleFlight;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
@@ -38,26 +42,44 @@ public class EnrichmentService {
     private static final Logger LOGGER = LoggerFactory.getLogger(EnrichmentService.class);
 
     @Autowired
-    private ISynonymsService synonymsService;
+    private CachedSynonymsService cachedSynonymsService;
 
     @Autowired
-    private IEnrichmentInfoService enrichmentInfoService;
+    private EnrichmentInfoBulkService enrichmentInfoBulkService;
 
     @Autowired
-    private BioOntologyService bioOntologyService;
+    private AsyncBioOntologyService asyncBioOntologyService;
+
+    @Autowired
+    private ClassCacheService classCacheService;
+
+    @Autowired
+    private Annotator annotator;
+
+    @Autowired
+    private NegativeLookupService negativeLookupService;
+
+    @Autowired
+    private OntologyDictionary ontologyDictionary;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private final SingleFlight<String, List<String>> wordLookups = new SingleFlight<>();
 
     /**
-     * Enrichment on the dataset, includes title, abstraction, sample protocol, data protocol.
+     * Find the biology related words in the fields of the dataset. Fields which did not change since the previous
+     * enrichment reuse the words found at that time, unless overwrite is set.
      *
-     * @return and enriched dataset
+     * @param item the dataset, its fields and its previous enrichment info, receives the new enrichment info
      */
-    public EnrichedDataset enrichment(Dataset dataset, Map<String, String> fields, boolean overwrite) throws Exception {
+    public void annotate(EnrichmentItem item, boolean overwrite) throws Exception {
 
-        String accession = dataset.getAccession();
-        String database = dataset.getDatabase();
+        String accession = item.getDataset().getAccession();
+        String database = item.getDataset().getDatabase();
+        Map<String, String> fields = item.getFields();
 
-        EnrichedDataset enrichedDataset = new EnrichedDataset(accession, database);
-        DatasetEnrichmentInfo prevDs = enrichmentInfoService.getLatest(accession, database);
+        DatasetEnrichmentInfo prevDs = item.getPreviousEnrichmentInfo();
 
         Map<String, List<WordInField>> synonyms = new HashMap<>();
         boolean hasChange = false;
@@ -66,18 +88,20 @@ public class EnrichmentService {
             synonyms = getWordsInFieldFromWS(fields);
             hasChange = true;
         } else {
+            Map<String, String> changedFields = new HashMap<>();
             for (String key : fields.keySet()) {
                 if (prevDs.getSynonyms() != null && prevDs.getSynonyms().containsKey(key)
                         && prevDs.getOriginalAttributes().get(key).equals(fields.get(key))) {
                     synonyms.put(key, prevDs.getSynonyms().get(key));
                 } else {
-                    List<WordInField> words = getWordsInFieldFromWS(fields.get(key));
-                    if (words != null && !words.isEmpty()) {
-                        synonyms.put(key, words);
-                        hasChange = true;
-                    }
+                    changedFields.put(key, fields.get(key));
                 }
             }
+            Map<String, List<WordInField>> words = getWordsInFieldFromWS(changedFields);
+            if (!words.isEmpty()) {
+                synonyms.putAll(words);
+                hasChange = true;
+            }
         }
 
         DatasetEnrichmentInfo datasetEnrichmentInfo = new DatasetEnrichmentInfo(accession, database);
@@ -85,17 +109,36 @@ public class EnrichmentService {
         datasetEnrichmentInfo.setEnrichTime(new Date());
 
         datasetEnrichmentInfo.setOriginalAttributes(fields);
-        if (hasChange) {
+        item.setEnrichmentInfo(datasetEnrichmentInfo);
+        item.setChanged(hasChange);
+    }
+
+    /**
+     * Queue the enrichment info of an annotated dataset for saving
+     *
+     * @param onSaved run once the enrichment info is stored, right away if there is nothing to store
+     */
+    public void saveEnrichmentInfo(EnrichmentItem item, Runnable onSaved) {
+        if (item.isChanged()) {
             //Only save into db when there is some changes
-            enrichmentInfoService.insert(datasetEnrichmentInfo);
+            enrichmentInfoBulkService.insert(item.getEnrichmentInfo(), onSaved);
+        } else {
+            onSaved.run();
         }
+    }
+
+    /**
+     * Turn the words found in each field of an annotated dataset into the enriched attributes
+     */
+    public void resolve(EnrichmentItem item) throws JSONException, RestClientException {
+        EnrichedDataset enrichedDataset = new EnrichedDataset(item.getDataset().getAccession(),
+                item.getDataset().getDatabase());
         Map<String, String> attribute = new HashMap<>();
-        for (Map.Entry<String, List<WordInField>> entry : synonyms.entrySet()) {
+        for (Map.Entry<String, List<WordInField>> entry : item.getEnrichmentInfo().getSynonyms().entrySet()) {
             attribute.put(entry.getKey(), enrichField(entry.getValue()));
         }
         enrichedDataset.setEnrichedAttributes(attribute);
-
-        return enrichedDataset;
+        item.setEnrichedDataset(enrichedDataset);
     }
 
     /**
@@ -129,52 +172,41 @@ public class EnrichmentService {
     }
 
     /**
-     * Get the biology related words in one field from WebService at bioontology.org
+     * Prepare one field for the annotator
      *
      * @param fieldText a field Text
-     * @return the words which are identified in the fieldText by recommender API from bioontology.org
+     * @return the text to annotate, or null if there is nothing to annotate
      */
-
-    private List<WordInField> getWordsInFieldFromWS(String fieldText) throws Exception {
-
-        List<WordInField> matchedWords = new ArrayList<>();
+    private String getTextToAnnotate(String fieldText) {
         if (fieldText == null || fieldText.equals(Constants.NOT_AVAILABLE)) {
-            return matchedWords;
+            return null;
         }
-        fieldText = fieldText.replace("%", " ").trim(); //to avoid malformed error
+        String text = fieldText.replace("%", " ").trim(); //to avoid malformed error
+
+        return text.isEmpty() ? null : text;
+    }
 
-        if (fieldText.isEmpty()) {
+    /**
+     * Get the biology related words in one field from the annotation result
+     *
+     * @param synonymsMap the words found in the field with their synonyms
+     * @return the distinct words, sorted by position
+     */
+    private List<WordInField> getWordsInField(Map<WordInField, Set<String>> synonymsMap) {
+        List<WordInField> matchedWords = new ArrayList<>();
+        if (synonymsMap == null) {
             return matchedWords;
         }
-        JsonNode recommends = bioOntologyService.getAnnotatedSynonyms(fieldText);
-        Map<WordInField, Set<String>> synonymsMap = new HashMap<>();
-        for (JsonNode annotations: recommends) {
-            if (annotations.get("annotatedClass") != null && annotations.get("annotations") != null) {
-                Set<String> synonyms = new HashSet<>();
-                if (annotations.get("annotatedClass") != null) {
-                    if (annotations.get("annotatedClass").get("synonym") != null) {
-                        for (JsonNode synonym: annotations.get("annotatedClass").get("synonym")) {
-                            synonyms.add(synonym.textValue());
-                        }
-                    }
-                }
-                for (JsonNode annotationValue: annotations.get("annotations")) {
-                    String actualWord = annotationValue.get("text").textValue();
-                    int from = annotationValue.get("from").intValue();
-                    int to = annotationValue.get("to").intValue();
-                    WordInField wordInField = new WordInField(actualWord, from, to);
-                    if (synonymsMap.containsKey(wordInField)) {
-                        synonyms.addAll(synonymsMap.get(wordInField));
-                    }
-                    synonymsMap.put(wordInField, synonyms);
-                }
-            }
-        }
         matchedWords.addAll(getDistinctWordList(synonymsMap));
         Collections.sort(matchedWords);
         return matchedWords;
     }
 
+    /**
+     * Annotate all the fields concurrently. The whole dataset shares the enrichment.dataset-timeout budget,
+     * so its latency is bounded by the slowest field rather than the sum of all the fields.
+     * The budget is the deadline of the dataset when there is one.
+     */
     private Map<String, List<WordInField>> getWordsInFieldFromWS(Map<String, String> fields) throws Exception {
 
         ConcurrentHashMap<String, List<WordInField>> results = new ConcurrentHashMap<>();
@@ -183,12 +215,37 @@ public class EnrichmentService {
             return results;
         }
 
+        Long deadline = Deadline.current();
+        if (deadline == null) {
+            deadline = System.nanoTime() + properties.getDatasetTimeout().toNanos();
+        }
+        Map<String, String> texts = new HashMap<>();
         for (Map.Entry<String, String> entry : fields.entrySet()) {
-            List<WordInField> matchedWords = getWordsInFieldFromWS(entry.getValue());
-            if (!matchedWords.isEmpty()) {
-                results.put(entry.getKey(), matchedWords);
+            String text = getTextToAnnotate(entry.getValue());
+            if (text != null) {
+                texts.put(entry.getKey(), text);
             }
         }
+        Map<String, CompletableFuture<Map<WordInField, Set<String>>>> pending = new HashMap<>();
+        try {
+            // All the fields are handed over at once, the annotator reads their cached results in one go
+            Map<String, CompletableFuture<Map<WordInField, Set<String>>>> annotated =
+                    annotator.annotate(new HashSet<>(texts.values()));
+            for (Map.Entry<String, String> entry : texts.entrySet()) {
+                pending.put(entry.getKey(), annotated.get(entry.getValue()));
+            }
+            for (Map.Entry<String, CompletableFuture<Map<WordInField, Set<String>>>> entry : pending.entrySet()) {
+                List<WordInField> matchedWords = getWordsInField(FutureUtils.await(entry.getValue(), deadline));
+                if (!matchedWords.isEmpty()) {
+                    results.put(entry.getKey(), matchedWords);
+                }
+            }
+        } finally {
+            // Stop waiting for the other fields when one failed or the budget ran out. This does not abort their
+            // requests: those already sent complete and fill the annotator cache, the queued ones are only dropped
+            // once the deadline they carry has passed
+            pending.values().forEach(x -> x.cancel(false));
+        }
 
         return results;
     }
@@ -198,24 +255,59 @@ public class EnrichmentService {
      * and insert them into the mongoDB. One assumption: if word1 == word2, word2 == word3,
      *                                                  then word1 == word3, == means
      * synonym.
+     * Words found in the local dictionary are resolved without calling BioPortal, and words which BioPortal could
+     * not resolve recently are not looked up again until their negative lookup expires. A word whose classes could
+     * not be resolved is skipped, the dataset is enriched without it.
      *
      * @param word to retrieve the given synonyms
-     * @return the list of synonyms
+     * @return the list of synonyms, or null if the word could not be resolved
      */
     public List<String> getSynonymsForWord(String word) throws JSONException, RestClientException {
 
-        List<String> synonyms;
+        List<String> synonyms = cachedSynonymsService.getSynonyms(word);
+        if (synonyms != null) {
+            return synonyms;
+        }
+        // Concurrent lookups of the same word share the first one, instead of all calling BioPortal
+        return wordLookups.get(word.toLowerCase(), () -> lookupSynonyms(word));
+    }
+
+    private List<String> lookupSynonyms(String word) throws JSONException, RestClientException {
 
-        if (synonymsService.isWordExist(word)) {
-            synonyms = synonymsService.getAllSynonyms(word);
-        } else {
+        // Another lookup of the word may have just finished
+        List<String> synonyms = cachedSynonymsService.getSynonyms(word);
+        if (synonyms != null) {
+            return synonyms;
+        }
+
+        synonyms = ontologyDictionary.getSynonyms(word);
+        if (synonyms == null) {
+            if (properties.isOffline()) {
+                return null;
+            }
+            NegativeLookup.Outcome previousOutcome = negativeLookupService.get(word);
+            if (previousOutcome == NegativeLookup.Outcome.NO_ANNOTATION) {
+                return Collections.singletonList(Constants.NOT_ANNOTATION_FOUND);
+            } else if (previousOutcome == NegativeLookup.Outcome.LOOKUP_FAILED) {
+                return null;
+            }
+            // Errors are not remembered, the dataset fails and the word is looked up again with the next one
             synonyms = getSynonymsForWordFromWS(word);
-            Synonym synonym = synonymsService.insert(word, synonyms);
-            if (synonym != null && synonym.getSynonyms() != null) {
-                synonyms = synonym.getSynonyms();
+            if (synonyms == null) {
+                negativeLookupService.record(word, NegativeLookup.Outcome.LOOKUP_FAILED);
+                return null;
+            }
+            if (synonyms.equals(Collections.singletonList(Constants.NOT_ANNOTATION_FOUND))) {
+                // Only kept in the negative lookups, so the word is looked up again once they expire
+                negativeLookupService.record(word, NegativeLookup.Outcome.NO_ANNOTATION);
+                return synonyms;
             }
         }
 
+        Synonym synonym = cachedSynonymsService.insert(word, synonyms);
+        if (synonym != null && synonym.getSynonyms() != null) {
+            synonyms = synonym.getSynonyms();
+        }
         return synonyms;
     }
 
@@ -231,8 +323,8 @@ public class EnrichmentService {
         String lowerWord = word.toLowerCase();
         ArrayList<String> synonyms = new ArrayList<>();
 
-        AnnotatedOntologyQuery[] annotatedTerms = bioOntologyService.getAnnotatedTerms(lowerWord,
-                Constants.OBO_ONTOLOGIES);
+        AnnotatedOntologyQuery[] annotatedTerms = FutureUtils.await(
+                asyncBioOntologyService.getAnnotatedTerms(lowerWord, Constants.OBO_ONTOLOGIES));
         if (annotatedTerms == null) {
             return null;
         }
@@ -254,13 +346,19 @@ public class EnrichmentService {
 
         JSONArray matchedClasses = findBioOntologyMatchclasses(matchedWord, annotatedTerms);
 
+        // Fetch all the matched classes at once, then collect them in order
+        List<CompletableFuture<SynonymQuery>> lookups = new ArrayList<>();
         for (int i = 0; i < matchedClasses.length(); i++) {
 
             JSONObject matchedClass = (JSONObject) matchedClasses.get(i);
             String wordId = matchedClass.getString(Constants.WORD_ID);
             String ontologyName = matchedClass.getString(Constants.ONTOLOGY_NAME);
 
-            SynonymQuery output = bioOntologyService.getAllSynonyms(ontologyName, wordId);
+            lookups.add(classCacheService.getAllSynonyms(ontologyName, wordId));
+        }
+
+        for (CompletableFuture<SynonymQuery> lookup : lookups) {
+            SynonymQuery output = FutureUtils.await(lookup);
             if (output == null) {
                 return null;
             }
@@ -309,82 +407,17 @@ public class EnrichmentService {
     }
 
     private List<WordInField> getDistinctWordList(Map<WordInField, Set<String>> synonyms) {
-        List<WordInField> matchedWords = new ArrayList<>();
-        if (synonyms != null && synonyms.size() > 0) {
-            for (Map.Entry<WordInField, Set<String>> matchedTerm : synonyms.entrySet()) {
-                WordInField key = matchedTerm.getKey();
-                WordInField word = new WordInField(key.getText().toLowerCase(), key.getFrom(), key.getTo());
-                WordInField overlappedWordInList = findOverlappedWordInList(word, matchedWords);
-
-                if (null == overlappedWordInList) {
-                    matchedWords.add(word);
-                } else {
-                    modifyWordList(word, overlappedWordInList, matchedWords);
-                }
-
-                synonymsService.update(new Synonym(word.getText(), (new ArrayList<>(matchedTerm.getValue()))));
-            }
-        }
-        return matchedWords;
-    }
-
-
-    /**
-     * Choose the longer one between word and overlapped word, write it in the matchedWords
-     *
-     * @param word                 the word to be search in the
-     * @param overlappedWordInList
-     * @param matchedWords
-     */
-    private void modifyWordList(WordInField word, WordInField overlappedWordInList, List<WordInField> matchedWords) {
-        int from = word.getFrom();
-        int to = word.getTo();
-
-        int overlappedFrom = overlappedWordInList.getFrom();
-        int overlappedTo = overlappedWordInList.getTo();
-
-        if (from - overlappedFrom == 0 && to - overlappedTo == 0) {
-            return;
+        if (synonyms == null || synonyms.isEmpty()) {
+            return new ArrayList<>();
         }
+        List<WordInField> matchedWords = new ArrayList<>(synonyms.size());
+        for (Map.Entry<WordInField, Set<String>> matchedTerm : synonyms.entrySet()) {
+            WordInField key = matchedTerm.getKey();
+            WordInField word = new WordInField(key.getText().toLowerCase(), key.getFrom(), key.getTo());
+            matchedWords.add(word);
 
-        if (from <= overlappedFrom && to >= overlappedTo) {
-            int index = matchedWords.indexOf(overlappedWordInList);
-            matchedWords.set(index, word);
+            cachedSynonymsService.update(new Synonym(word.getText(), (new ArrayList<>(matchedTerm.getValue()))));
         }
+        return EnrichmentUtils.getLongestWords(matchedWords);
     }
-
-    /**
-     * Find the words in matchedWords which is overlapped with "word"
-     *
-     * @param word
-     * @param matchedWords
-     * @return
-     */
-    private WordInField findOverlappedWordInList(WordInField word, List<WordInField> matchedWords) {
-        WordInField overlappedWord = null;
-
-        for (WordInField wordInList : matchedWords) {
-
-            if (word.getFrom() == wordInList.getFrom() && word.getTo() == wordInList.getTo()) {
-                LOGGER.debug("find same word for '" + word + "':" + wordInList);
-                overlappedWord = wordInList;
-                break;
-            }
-            if (word.getFrom() <= wordInList.getTo() && word.getTo() >= wordInList.getTo()) {
-                LOGGER.debug("find an overlapped word for '" + word + "':" + wordInList);
-                overlappedWord = wordInList;
-                break;
-            }
-            if (word.getTo() >= wordInList.getFrom() && word.getTo() <= wordInList.getTo()) {
-                LOGGER.debug("find an overlapped word for '" + word + "':" + wordInList);
-                overlappedWord = wordInList;
-                break;
-            }
-        }
-
-        return overlappedWord;
-    }
-
 }
-
-
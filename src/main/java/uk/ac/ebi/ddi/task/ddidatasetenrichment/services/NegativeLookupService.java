@@ -0,0 +1,110 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.NegativeLookup;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.LruCache;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remember the words BioPortal could not resolve. Within a run the latest outcomes are kept in memory, they are
+ * also saved in Mongo so the next runs skip them until they expire.
+ */
+@Service
+public class NegativeLookupService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NegativeLookupService.class);
+
+    /** Marks the words checked in Mongo and found absent, so they are not read again during the run */
+    private static final NegativeLookup ABSENT = new NegativeLookup();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private LruCache<String, NegativeLookup> lookups;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Let Mongo remove the outcomes once they expire, reads still check their age against the current settings
+     */
+    @PostConstruct
+    public void init() {
+        lookups = new LruCache<>(properties.getSynonymCacheSize());
+        try {
+            mongoTemplate.indexOps(NegativeLookup.class)
+                    .ensureIndex(new Index().on("expireAt", Sort.Direction.ASC).expire(0, TimeUnit.SECONDS));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to create the expiry index of the negative lookups, {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the outcome of the previous lookup of the word, or null if it has to be looked up
+     */
+    public NegativeLookup.Outcome get(String word) {
+        NegativeLookup lookup = lookups.peek(word);
+        if (lookup == null) {
+            lookup = read(word);
+            lookups.put(word, lookup);
+        }
+        if (lookup == ABSENT) {
+            return null;
+        }
+        if (isExpired(lookup)) {
+            lookups.put(word, ABSENT);
+            return null;
+        }
+        hits.incrementAndGet();
+        return lookup.getOutcome();
+    }
+
+    public void record(String word, NegativeLookup.Outcome outcome) {
+        NegativeLookup lookup = new NegativeLookup(word, outcome);
+        lookup.setExpireAt(new Date(lookup.getCreatedAt().getTime() + getTtl(outcome).toMillis()));
+        lookups.put(word, lookup);
+        try {
+            mongoTemplate.save(lookup);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to save the negative lookup of {}, {}", word, e.getMessage());
+        }
+    }
+
+    public void logStatistics() {
+        LOGGER.info("Negative lookups: {} words skipped", hits.get());
+    }
+
+    private NegativeLookup read(String word) {
+        try {
+            NegativeLookup lookup = mongoTemplate.findById(word, NegativeLookup.class);
+            return lookup == null || isExpired(lookup) ? ABSENT : lookup;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to read the negative lookup of {}, {}", word, e.getMessage());
+            return ABSENT;
+        }
+    }
+
+    private boolean isExpired(NegativeLookup lookup) {
+        long expiry = System.currentTimeMillis() - getTtl(lookup.getOutcome()).toMillis();
+        return lookup.getCreatedAt() == null || lookup.getCreatedAt().getTime() < expiry;
+    }
+
+    private Duration getTtl(NegativeLookup.Outcome outcome) {
+        return outcome == NegativeLookup.Outcome.NO_ANNOTATION
+                ? properties.getNegativeLookupTtl() : properties.getFailedLookupTtl();
+    }
+}
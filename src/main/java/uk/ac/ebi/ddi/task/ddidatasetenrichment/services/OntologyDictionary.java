@@ -0,0 +1,127 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.OntologyClass;
+
+import javax.annotation.PostConstruct;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local synonym dictionary built from ontology dumps by {@link OntologyImportService}. Every label and synonym of
+ * a class points to the class, so a word can be resolved to the synonyms of all the classes it names without
+ * calling BioPortal.
+ * The dictionary file is a gzipped TSV with one class per line: ontology, class id, label, synonyms separated by |.
+ */
+@Service
+public class OntologyDictionary {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OntologyDictionary.class);
+
+    private static final String SYNONYM_SEPARATOR = "|";
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    private Map<String, List<OntologyClass>> classesByTerm = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (properties.getDictionaryFile() == null) {
+            return;
+        }
+        Path file = Paths.get(properties.getDictionaryFile());
+        if (!Files.exists(file)) {
+            LOGGER.warn("Dictionary file {} not found, synonyms will be resolved by BioPortal only", file);
+            return;
+        }
+        Map<String, List<OntologyClass>> terms = new HashMap<>();
+        List<OntologyClass> classes = read(file);
+        for (OntologyClass ontologyClass : classes) {
+            Set<String> classTerms = new HashSet<>();
+            classTerms.add(normalize(ontologyClass.getPrefLabel()));
+            ontologyClass.getSynonyms().forEach(x -> classTerms.add(normalize(x)));
+            for (String term : classTerms) {
+                terms.computeIfAbsent(term, x -> new ArrayList<>()).add(ontologyClass);
+            }
+        }
+        classesByTerm = terms;
+        LOGGER.info("Dictionary loaded: {} classes, {} terms", classes.size(), terms.size());
+    }
+
+    public boolean isLoaded() {
+        return !classesByTerm.isEmpty();
+    }
+
+    /**
+     * @param term a label or a synonym of some classes
+     * @return the synonyms of all the classes named by the term, or null if the term is not in the dictionary
+     */
+    public List<String> getSynonyms(String term) {
+        List<OntologyClass> classes = classesByTerm.get(normalize(term));
+        if (classes == null) {
+            return null;
+        }
+        Set<String> synonyms = new LinkedHashSet<>();
+        classes.forEach(x -> synonyms.addAll(x.getSynonyms()));
+        return new ArrayList<>(synonyms);
+    }
+
+    /**
+     * @return all the terms of the dictionary, normalized, with the classes they name
+     */
+    public Map<String, List<OntologyClass>> getClassesByTerm() {
+        return Collections.unmodifiableMap(classesByTerm);
+    }
+
+    public static String normalize(String term) {
+        return term.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    public static void write(Path file, Collection<OntologyClass> classes) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8))) {
+            for (OntologyClass ontologyClass : classes) {
+                StringJoiner synonyms = new StringJoiner(SYNONYM_SEPARATOR);
+                ontologyClass.getSynonyms().forEach(x -> synonyms.add(clean(x)));
+                writer.write(clean(ontologyClass.getOntology()) + "\t" + clean(ontologyClass.getId()) + "\t"
+                        + clean(ontologyClass.getPrefLabel()) + "\t" + synonyms + "\n");
+            }
+        }
+    }
+
+    public static List<OntologyClass> read(Path file) throws IOException {
+        List<OntologyClass> classes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t", -1);
+                if (columns.length < 4) {
+                    continue;
+                }
+                OntologyClass ontologyClass = new OntologyClass(columns[0], columns[1]);
+                ontologyClass.setPrefLabel(columns[2]);
+                if (!columns[3].isEmpty()) {
+                    ontologyClass.setSynonyms(Arrays.asList(columns[3].split("\\" + SYNONYM_SEPARATOR)));
+                }
+                classes.add(ontologyClass);
+            }
+        }
+        return classes;
+    }
+
+    private static String clean(String value) {
+        return value.replaceAll("[\\t\\r\\n|]", " ");
+    }
+}
@@ -0,0 +1,50 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.OntologyClass;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.OntologyFileReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build the local synonym dictionary from ontology dumps (OBO, OWL or BioPortal CSV)
+ */
+@Service
+public class OntologyImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OntologyImportService.class);
+
+    /**
+     * @param ontologyFiles  the ontology dumps, the ontology of each file is taken from its name, e.g. EFO.owl
+     * @param dictionaryFile where to write the dictionary
+     */
+    public void importOntologies(List<String> ontologyFiles, String dictionaryFile) throws IOException {
+        if (dictionaryFile == null) {
+            throw new IllegalArgumentException("enrichment.dictionary-file is required to import ontologies");
+        }
+        // The same class read from several dumps, e.g. go.obo and go.owl, is one entry with all the synonyms
+        Map<String, OntologyClass> classes = new LinkedHashMap<>();
+        for (String ontologyFile : ontologyFiles) {
+            Path file = Paths.get(ontologyFile);
+            String ontology = OntologyFileReader.getOntologyName(file);
+            List<OntologyClass> ontologyClasses = OntologyFileReader.read(file, ontology);
+            LOGGER.info("Read {} classes of {} from {}", ontologyClasses.size(), ontology, file);
+            for (OntologyClass ontologyClass : ontologyClasses) {
+                OntologyClass known = classes.putIfAbsent(ontologyClass.getId(), ontologyClass);
+                if (known != null) {
+                    ontologyClass.getSynonyms().stream().filter(x -> !known.getSynonyms().contains(x))
+                            .forEach(known.getSynonyms()::add);
+                }
+            }
+        }
+        OntologyDictionary.write(Paths.get(dictionaryFile), classes.values());
+        LOGGER.info("Dictionary of {} classes written to {}", classes.size(), dictionaryFile);
+    }
+}
@@ -0,0 +1,242 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.Deadline;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.SingleFlight;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotate the texts with the BioPortal annotator, reusing the results cached for the same text.
+ * When enrichment.annotator-batch-chars is set and enrichment.annotator-longest-only is off, short texts are packed
+ * together into a single annotator request of at most that many characters. Without the longest only filter the
+ * annotator returns every match within each text, whatever the texts around it, so the results are the same.
+ */
+@Service
+@ConditionalOnProperty(name = "enrichment.annotator", havingValue = "remote", matchIfMissing = true)
+public class RemoteAnnotator implements Annotator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteAnnotator.class);
+
+    @Autowired
+    private AsyncBioOntologyService asyncBioOntologyService;
+
+    @Autowired
+    private AnnotatorCacheService annotatorCacheService;
+
+    @Autowired
+    private DatasetEnrichmentTaskProperties properties;
+
+    /** Put between the texts of a batch, the matches spanning it belong to no text and are dropped */
+    private static final String SEPARATOR = "\n.\n";
+
+    private final SingleFlight<String, Map<WordInField, Set<String>>> requests = new SingleFlight<>();
+
+    private final Object lock = new Object();
+
+    private List<PendingText> pending = new ArrayList<>();
+
+    private int pendingChars = 0;
+
+    private ScheduledExecutorService batchTimer;
+
+    private int batchChars;
+
+    @PostConstruct
+    public void init() {
+        batchChars = properties.getAnnotatorBatchChars();
+        if (batchChars > 0 && properties.isAnnotatorLongestOnly()) {
+            LOGGER.warn("Annotator requests are not batched, enrichment.annotator-longest-only is on");
+            batchChars = 0;
+        }
+        if (batchChars > 0) {
+            long linger = properties.getAnnotatorBatchLinger().toMillis();
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("annotator-batch-");
+            threadFactory.setDaemon(true);
+            batchTimer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            batchTimer.scheduleWithFixedDelay(this::flush, linger, linger, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (batchTimer != null) {
+            batchTimer.shutdownNow();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<WordInField, Set<String>>> annotate(String text) {
+        return annotate(Collections.singleton(text)).get(text);
+    }
+
+    /**
+     * The cached results of all the texts are read at once
+     */
+    @Override
+    public Map<String, CompletableFuture<Map<WordInField, Set<String>>>> annotate(Collection<String> texts) {
+        Map<String, Map<WordInField, Set<String>>> cached = annotatorCacheService.getAll(texts);
+        Map<String, CompletableFuture<Map<WordInField, Set<String>>>> results = new HashMap<>();
+        for (String text : texts) {
+            Map<WordInField, Set<String>> words = cached.get(text);
+            // The same text annotated by several datasets at the same time is only sent once
+            results.put(text, words != null ? CompletableFuture.completedFuture(words)
+                    : requests.execute(text, () -> send(text)));
+        }
+        return results;
+    }
+
+    private CompletableFuture<Map<WordInField, Set<String>>> send(String text) {
+        int budget = batchChars;
+        if (budget <= 0 || text.length() + SEPARATOR.length() > budget) {
+            return fetch(text);
+        }
+        // Short texts wait for others to share a request, until the budget is reached or the linger time is over
+        PendingText pendingText = new PendingText(text, Deadline.current());
+        List<PendingText> batch = null;
+        synchronized (lock) {
+            if (pendingChars + text.length() + SEPARATOR.length() > budget) {
+                batch = pending;
+                pending = new ArrayList<>();
+                pendingChars = 0;
+            }
+            pending.add(pendingText);
+            pendingChars += text.length() + SEPARATOR.length();
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return pendingText.result;
+    }
+
+    private CompletableFuture<Map<WordInField, Set<String>>> fetch(String text) {
+        return asyncBioOntologyService.getAnnotatedWords(text)
+                .thenApply(words -> {
+                    annotatorCacheService.put(text, words);
+                    return words;
+                });
+    }
+
+    private void flush() {
+        List<PendingText> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+            pendingChars = 0;
+        }
+        send(batch);
+    }
+
+    /**
+     * Annotate the texts of a batch as a single text, then give each one the annotations within its own range
+     * with their offsets moved back to the start of the text
+     */
+    private void send(List<PendingText> batch) {
+        // The request is made for all the texts, it runs until the last of them is out of time
+        Long deadline = getLatestDeadline(batch);
+        if (batch.size() == 1) {
+            PendingText pendingText = batch.get(0);
+            Deadline.with(deadline, () -> fetch(pendingText.text)).get()
+                    .whenComplete((words, error) -> complete(pendingText, words, error));
+            return;
+        }
+        StringBuilder combined = new StringBuilder();
+        for (PendingText pendingText : batch) {
+            if (combined.length() > 0) {
+                combined.append(SEPARATOR);
+            }
+            pendingText.offset = combined.length();
+            combined.append(pendingText.text);
+        }
+        Deadline.with(deadline, () -> asyncBioOntologyService.getAnnotatedWords(combined.toString())).get()
+                .whenComplete((words, error) -> {
+                    for (PendingText pendingText : batch) {
+                        Map<WordInField, Set<String>> textWords = null;
+                        if (error == null) {
+                            textWords = getWordsInRange(words, pendingText.offset, pendingText.text.length());
+                            annotatorCacheService.put(pendingText.text, textWords);
+                        }
+                        complete(pendingText, textWords, error);
+                    }
+                });
+    }
+
+    /**
+     * @return the latest deadline of the texts, or null if one of them has none
+     */
+    private static Long getLatestDeadline(List<PendingText> batch) {
+        Long latest = null;
+        for (PendingText pendingText : batch) {
+            if (pendingText.deadline == null) {
+                return null;
+            }
+            latest = latest == null || pendingText.deadline - latest > 0 ? pendingText.deadline : latest;
+        }
+        return latest;
+    }
+
+    /**
+     * @param offset of the text in the batch, 0 based
+     * @return the words within the text, with their positions in the text
+     */
+    static Map<WordInField, Set<String>> getWordsInRange(Map<WordInField, Set<String>> words,
+                                                         int offset, int length) {
+        Map<WordInField, Set<String>> result = new HashMap<>();
+        for (Map.Entry<WordInField, Set<String>> entry : words.entrySet()) {
+            WordInField word = entry.getKey();
+            // from and to are 1 based and inclusive
+            if (word.getFrom() > offset && word.getTo() <= offset + length) {
+                result.put(new WordInField(word.getText(), word.getFrom() - offset, word.getTo() - offset),
+                        entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static void complete(PendingText pendingText, Map<WordInField, Set<String>> words, Throwable error) {
+        if (error != null) {
+            pendingText.result.completeExceptionally(error);
+        } else {
+            pendingText.result.complete(words);
+        }
+    }
+
+    private static class PendingText {
+
+        private final String text;
+
+        private final CompletableFuture<Map<WordInField, Set<String>>> result = new CompletableFuture<>();
+
+        /** Deadline of the caller, as returned by System.nanoTime() */
+        private final Long deadline;
+
+        private int offset;
+
+        PendingText(String text, Long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+    }
+}
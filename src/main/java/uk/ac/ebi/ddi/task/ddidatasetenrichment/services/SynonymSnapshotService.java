@@ -0,0 +1,36 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.ddi.service.db.model.enrichment.Synonym;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.utils.SynonymSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Export the synonym collection to the memory mapped snapshot used as first tier by {@link CachedSynonymsService}
+ */
+@Service
+public class SynonymSnapshotService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SynonymSnapshotService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public void export(String snapshotFile) throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalArgumentException("enrichment.synonym-snapshot-file is required to export synonyms");
+        }
+        try (CloseableIterator<Synonym> synonyms = mongoTemplate.stream(new Query(), Synonym.class)) {
+            int count = SynonymSnapshot.write(Paths.get(snapshotFile), synonyms);
+            LOGGER.info("Snapshot of {} synonyms written to {}", count, snapshotFile);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by all the requests to an API, whose rate adapts to the API (AIMD): each successful request
+ * raises it so that it grows by about one request per second every second, up to maxRate, and each throttled
+ * request halves it, down to minRate. A throttled request also holds every caller until its Retry-After is over.
+ */
+public class AdaptiveRateLimiter {
+
+    /** Successive throttles within this delay are taken as a single one */
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final double minRate;
+
+    private final double maxRate;
+
+    private double rate;
+
+    /** When the next request is allowed to go */
+    private long nextFreeNanos = System.nanoTime();
+
+    private long lastDecreaseNanos = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+
+    public AdaptiveRateLimiter(double minRate, double maxRate) {
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rate = maxRate;
+    }
+
+    /**
+     * Reserve the turn of a request
+     *
+     * @return how long the request has to wait for its turn, in nanoseconds
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        return start - now;
+    }
+
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + 1 / rate);
+    }
+
+    /**
+     * @param retryAfter how long the API asked to wait, or null
+     */
+    public synchronized void onThrottle(Duration retryAfter) {
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos >= DECREASE_INTERVAL_NANOS) {
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+            lastDecreaseNanos = now;
+        }
+        if (retryAfter != null) {
+            nextFreeNanos = Math.max(nextFreeNanos, now + retryAfter.toNanos());
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+}
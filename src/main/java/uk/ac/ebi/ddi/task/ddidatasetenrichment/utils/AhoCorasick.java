@@ -0,0 +1,229 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton finding all the occurrences of a set of patterns in a text in a single pass.
+ * Transitions are kept in an open addressing hash table keyed by (state, character) and the states in plain
+ * int arrays, so the automaton stays compact for dictionaries of millions of terms.
+ * Once built, the automaton is immutable and can be used by several threads.
+ */
+public class AhoCorasick {
+
+    private static final int NONE = -1;
+
+    private static final int INITIAL_STATES = 1024;
+
+    /** One occurrence of a pattern in the text */
+    public static class Match {
+
+        private final int start;
+
+        private final int end;
+
+        private final int pattern;
+
+        public Match(int start, int end, int pattern) {
+            this.start = start;
+            this.end = end;
+            this.pattern = pattern;
+        }
+
+        /** @return the index of the first character of the occurrence */
+        public int getStart() {
+            return start;
+        }
+
+        /** @return the index after the last character of the occurrence */
+        public int getEnd() {
+            return end;
+        }
+
+        /** @return the index of the pattern in the list given to the constructor */
+        public int getPattern() {
+            return pattern;
+        }
+    }
+
+    private final TransitionTable transitions = new TransitionTable();
+
+    private int stateCount = 1;
+
+    private int[] depth = new int[INITIAL_STATES];
+
+    private int[] output = new int[INITIAL_STATES];
+
+    private int[] fail = new int[INITIAL_STATES];
+
+    /** Nearest state on the fail chain which ends a pattern, 0 if none */
+    private int[] outputLink = new int[INITIAL_STATES];
+
+    private int[] firstChild = new int[INITIAL_STATES];
+
+    private int[] nextSibling = new int[INITIAL_STATES];
+
+    private char[] label = new char[INITIAL_STATES];
+
+    public AhoCorasick(List<String> patterns) {
+        output[0] = NONE;
+        firstChild[0] = NONE;
+        for (int i = 0; i < patterns.size(); i++) {
+            add(patterns.get(i), i);
+        }
+        buildFailLinks();
+    }
+
+    /**
+     * @return all the occurrences of the patterns in the text, ordered by end position
+     */
+    public List<Match> findAll(CharSequence text) {
+        List<Match> matches = new ArrayList<>();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (state != 0 && transitions.get(state, c) == NONE) {
+                state = fail[state];
+            }
+            int next = transitions.get(state, c);
+            state = next == NONE ? 0 : next;
+            for (int s = output[state] != NONE ? state : outputLink[state]; s != 0; s = outputLink[s]) {
+                matches.add(new Match(i + 1 - depth[s], i + 1, output[s]));
+            }
+        }
+        return matches;
+    }
+
+    private void add(String pattern, int index) {
+        if (pattern.isEmpty()) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            int next = transitions.get(state, c);
+            if (next == NONE) {
+                next = newState(state, c);
+            }
+            state = next;
+        }
+        if (output[state] == NONE) {
+            output[state] = index;
+        }
+    }
+
+    private int newState(int parent, char c) {
+        if (stateCount == depth.length) {
+            int capacity = depth.length * 2;
+            depth = Arrays.copyOf(depth, capacity);
+            output = Arrays.copyOf(output, capacity);
+            fail = Arrays.copyOf(fail, capacity);
+            outputLink = Arrays.copyOf(outputLink, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            label = Arrays.copyOf(label, capacity);
+        }
+        int state = stateCount++;
+        depth[state] = depth[parent] + 1;
+        output[state] = NONE;
+        firstChild[state] = NONE;
+        label[state] = c;
+        nextSibling[state] = firstChild[parent];
+        firstChild[parent] = state;
+        transitions.put(parent, c, state);
+        return state;
+    }
+
+    private void buildFailLinks() {
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int child = firstChild[0]; child != NONE; child = nextSibling[child]) {
+            fail[child] = 0;
+            outputLink[child] = 0;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int child = firstChild[state]; child != NONE; child = nextSibling[child]) {
+                char c = label[child];
+                int f = fail[state];
+                while (f != 0 && transitions.get(f, c) == NONE) {
+                    f = fail[f];
+                }
+                int target = transitions.get(f, c);
+                fail[child] = target == NONE ? 0 : target;
+                outputLink[child] = output[fail[child]] != NONE ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Open addressing hash table from (state, character) to the next state
+     */
+    private static class TransitionTable {
+
+        private long[] keys = new long[INITIAL_STATES * 2];
+
+        private int[] values = new int[INITIAL_STATES * 2];
+
+        private int size = 0;
+
+        TransitionTable() {
+            Arrays.fill(keys, NONE);
+        }
+
+        int get(int state, char c) {
+            long key = key(state, c);
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != NONE; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return NONE;
+        }
+
+        void put(int state, char c, int next) {
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            insert(key(state, c), next);
+            size++;
+        }
+
+        private void insert(long key, int value) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != NONE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(keys, NONE);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NONE) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static long key(int state, char c) {
+            return ((long) state << 16) | c;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming reader of the BioPortal annotator responses. Only the synonyms of the annotated classes and the
+ * text, from and to of the annotations are read, definitions, links and hierarchies are skipped without being
+ * materialized.
+ */
+public class AnnotationParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private AnnotationParser() {
+    }
+
+    /**
+     * @param response the annotator response
+     * @return the words identified in the text, with the synonyms of their classes
+     */
+    public static Map<WordInField, Set<String>> parse(InputStream response) throws IOException {
+        Map<WordInField, Set<String>> synonymsMap = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(response)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return synonymsMap;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Set<String> synonyms = null;
+                List<WordInField> words = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("annotatedClass".equals(name) && value == JsonToken.START_OBJECT) {
+                        synonyms = readSynonyms(parser);
+                    } else if ("annotations".equals(name) && value == JsonToken.START_ARRAY) {
+                        words = readWords(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (synonyms != null && words != null) {
+                    for (WordInField wordInField : words) {
+                        if (synonymsMap.containsKey(wordInField)) {
+                            synonyms.addAll(synonymsMap.get(wordInField));
+                        }
+                        synonymsMap.put(wordInField, synonyms);
+                    }
+                }
+            }
+        }
+        return synonymsMap;
+    }
+
+    private static Set<String> readSynonyms(JsonParser parser) throws IOException {
+        Set<String> synonyms = new HashSet<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("synonym".equals(name) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+                        synonyms.add(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return synonyms;
+    }
+
+    private static List<WordInField> readWords(JsonParser parser) throws IOException {
+        List<WordInField> words = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String text = null;
+            Integer from = null;
+            Integer to = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("text".equals(name) && value == JsonToken.VALUE_STRING) {
+                    text = parser.getText();
+                } else if ("from".equals(name) && value == JsonToken.VALUE_NUMBER_INT) {
+                    from = parser.getIntValue();
+                } else if ("to".equals(name) && value == JsonToken.VALUE_NUMBER_INT) {
+                    to = parser.getIntValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (text != null && from != null && to != null) {
+                words.add(new WordInField(text, from, to));
+            }
+        }
+        return words;
+    }
+}
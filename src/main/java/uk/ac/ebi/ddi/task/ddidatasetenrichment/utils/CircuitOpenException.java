@@ -0,0 +1,13 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Thrown instead of calling an API whose circuit breaker is open
+ */
+public class CircuitOpenException extends RestClientException {
+
+    public CircuitOpenException(String msg) {
+        super(msg);
+    }
+}
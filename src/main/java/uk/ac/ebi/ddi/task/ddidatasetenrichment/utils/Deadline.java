@@ -0,0 +1,85 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.function.Supplier;
+
+/**
+ * Deadline of the work done by the current thread, as returned by {@link System#nanoTime()}. It is set for the
+ * processing of a dataset, carried over to the threads making the requests on its behalf with
+ * {@link #propagate(Supplier)}, and checked by the requests and by the waits of {@link FutureUtils}.
+ */
+public class Deadline {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * @return the deadline of the current thread, or null if there is none
+     */
+    public static Long current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run the task with the given deadline
+     */
+    public static void run(Long deadline, Task task) throws Exception {
+        Long previous = CURRENT.get();
+        set(deadline);
+        try {
+            task.run();
+        } finally {
+            set(previous);
+        }
+    }
+
+    /**
+     * @return a supplier running the given one with the deadline of the current thread
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> supplier) {
+        return with(CURRENT.get(), supplier);
+    }
+
+    /**
+     * @return a supplier running the given one with the given deadline, none if it is null
+     */
+    public static <T> Supplier<T> with(Long deadline, Supplier<T> supplier) {
+        return () -> {
+            Long previous = CURRENT.get();
+            set(deadline);
+            try {
+                return supplier.get();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    /**
+     * @return the time left before the deadline, Long.MAX_VALUE if there is none
+     */
+    public static long remainingNanos() {
+        Long deadline = CURRENT.get();
+        return deadline == null ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+
+    public static void check() {
+        if (remainingNanos() <= 0) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    private static void set(Long deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+/**
+ * Thrown when the time budget of the dataset being processed is over
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException() {
+        super("Time budget of the dataset exceeded");
+    }
+}
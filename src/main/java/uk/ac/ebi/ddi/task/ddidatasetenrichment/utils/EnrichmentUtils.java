@@ -1,7 +1,17 @@
 package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
 
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 public class EnrichmentUtils {
 
@@ -32,4 +42,61 @@ public class EnrichmentUtils {
         }
         return null;
     }
+
+    /**
+     * Drop the words overlapping each other, keeping the longer covering span. The words are swept by start
+     * position, longest first for the same start, and a word is kept unless it overlaps the last kept one,
+     * so among partially overlapping words the leftmost one wins.
+     *
+     * @param words the words found in a field, from and to being inclusive
+     * @return the words which do not overlap, sorted by position
+     */
+    public static List<WordInField> getLongestWords(Collection<WordInField> words) {
+        List<WordInField> sorted = new ArrayList<>(words);
+        sorted.sort(Comparator.comparingInt(WordInField::getFrom)
+                .thenComparing(Comparator.comparingInt(WordInField::getTo).reversed()));
+        List<WordInField> result = new ArrayList<>();
+        WordInField last = null;
+        for (WordInField word : sorted) {
+            if (last == null || word.getFrom() > last.getTo()) {
+                result.add(word);
+                last = word;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decide whether a dataset belongs to the given shard. The hash only depends on the accession and the database,
+     * so every task instance computes the same partition regardless of the order the datasets are read in.
+     */
+    public static boolean isInShard(String accession, String database, int shardIndex, int shardCount) {
+        return shardCount <= 1 || getShardHash(accession, database) % shardCount == shardIndex;
+    }
+
+    /**
+     * @return the hash partitioning the datasets, the shard of a dataset is the remainder of its division by the
+     * number of shards
+     */
+    public static long getShardHash(String accession, String database) {
+        CRC32 crc = new CRC32();
+        crc.update((database + ":" + accession).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * @return the hexadecimal SHA-256 digest of the text
+     */
+    public static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
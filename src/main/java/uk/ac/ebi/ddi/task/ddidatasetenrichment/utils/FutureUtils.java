@@ -0,0 +1,55 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class FutureUtils {
+
+    private FutureUtils() {
+    }
+
+    /**
+     * Wait for the future and rethrow the original runtime exception instead of the CompletionException wrapper,
+     * so callers see the same errors as with the blocking calls. The wait ends with a
+     * {@link DeadlineExceededException} when the deadline of the current thread is over.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        Long deadline = Deadline.current();
+        if (deadline != null) {
+            try {
+                return await(future, deadline);
+            } catch (TimeoutException e) {
+                throw new DeadlineExceededException();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the future until the given deadline, as returned by {@link System#nanoTime()}
+     */
+    public static <T> T await(CompletableFuture<T> future, long deadline)
+            throws InterruptedException, TimeoutException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+}
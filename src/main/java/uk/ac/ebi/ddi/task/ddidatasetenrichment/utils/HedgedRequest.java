@@ -0,0 +1,113 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A request sent a second time when it is slow. The delay is counted from the start of the first request, and
+ * the second request is not sent while the client is busy, it would only make the wait longer. The first
+ * response wins and the other request is cancelled, an error is only reported once no request can answer any more.
+ *
+ * @param <T> type of the response
+ */
+public class HedgedRequest<T> {
+
+    private final Supplier<CompletableFuture<T>> call;
+
+    private final long delayNanos;
+
+    private final ScheduledExecutorService timer;
+
+    private final BooleanSupplier busy;
+
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    /** The first request, and the second one until it is known not to be sent */
+    private final AtomicInteger outstanding = new AtomicInteger(2);
+
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    private volatile CompletableFuture<T> primary;
+
+    private volatile CompletableFuture<T> hedge;
+
+    /**
+     * @param call  sends the request, cancelling the future it returns aborts it
+     * @param timer sends the second request once the delay is over
+     * @param busy  whether other requests are waiting to be sent
+     */
+    public HedgedRequest(Supplier<CompletableFuture<T>> call, long delayNanos, ScheduledExecutorService timer,
+                         BooleanSupplier busy) {
+        this.call = call;
+        this.delayNanos = delayNanos;
+        this.timer = timer;
+        this.busy = busy;
+    }
+
+    /**
+     * @return the first response, cancelling it cancels both requests
+     */
+    public CompletableFuture<T> start() {
+        ScheduledFuture<?> hedgeTimer = timer.schedule(this::sendHedge, delayNanos, TimeUnit.NANOSECONDS);
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                hedgeTimer.cancel(false);
+                cancel(primary);
+                cancel(hedge);
+            }
+        });
+        primary = call.get();
+        primary.whenComplete((value, e) -> {
+            if (hedgeTimer.cancel(false)) {
+                finish(null);
+            }
+            onResponse(value, e, hedge);
+        });
+        return result;
+    }
+
+    private void sendHedge() {
+        if (result.isDone() || busy.getAsBoolean()) {
+            finish(null);
+            return;
+        }
+        CompletableFuture<T> second = call.get();
+        hedge = second;
+        if (result.isDone()) {
+            second.cancel(true);
+        }
+        second.whenComplete((value, e) -> onResponse(value, e, primary));
+    }
+
+    private void onResponse(T value, Throwable failure, CompletableFuture<T> other) {
+        if (failure != null) {
+            finish(failure);
+            return;
+        }
+        if (result.complete(value)) {
+            cancel(other);
+        }
+        finish(null);
+    }
+
+    private void cancel(CompletableFuture<T> request) {
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    private void finish(Throwable failure) {
+        if (failure != null) {
+            error.compareAndSet(null, failure);
+        }
+        if (outstanding.decrementAndGet() == 0 && !result.isDone()) {
+            result.completeExceptionally(error.get());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.Arrays;
+
+/**
+ * Percentiles of the latest latencies of some calls, kept in a ring buffer
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+
+    private int count = 0;
+
+    private int next = 0;
+
+    public LatencyTracker(int size) {
+        samples = new long[size];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency in nanoseconds, or -1 if there are no samples yet
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+}
@@ -0,0 +1,267 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.OntologyClass;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read the classes of an ontology from a local dump, in OBO, OWL (RDF/XML) or BioPortal CSV format.
+ * Files ending with .gz are decompressed on the fly.
+ */
+public class OntologyFileReader {
+
+    private static final Pattern OBO_SYNONYM = Pattern.compile("^synonym:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private static final String OWL_NS = "http://www.w3.org/2002/07/owl#";
+
+    private static final String OBO_PURL = "http://purl.obolibrary.org/obo/";
+
+    /** Last segment of an IRI in the OBO style, e.g. GO_0008150 */
+    private static final Pattern OBO_IRI_ID = Pattern.compile("([A-Za-z][A-Za-z0-9]*)_([A-Za-z0-9]+)");
+
+    private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    private static final Set<String> OWL_LABELS = new HashSet<>(Arrays.asList("label", "prefLabel"));
+
+    private static final Set<String> OWL_SYNONYMS = new HashSet<>(Arrays.asList("hasExactSynonym",
+            "hasRelatedSynonym", "hasBroadSynonym", "hasNarrowSynonym", "altLabel", "synonym"));
+
+    private OntologyFileReader() {
+    }
+
+    /**
+     * Read an ontology dump, the format is guessed from the file extension
+     *
+     * @param file     the ontology dump
+     * @param ontology the acronym of the ontology, e.g. EFO
+     * @return the classes which are not obsolete and have a label
+     */
+    public static List<OntologyClass> read(Path file, String ontology) throws IOException {
+        String name = file.getFileName().toString().toLowerCase().replaceAll("\\.gz$", "");
+        try (InputStream in = open(file)) {
+            if (name.endsWith(".obo")) {
+                return readObo(in, ontology);
+            } else if (name.endsWith(".owl") || name.endsWith(".rdf") || name.endsWith(".xml")) {
+                return readOwl(in, ontology);
+            } else if (name.endsWith(".csv")) {
+                return readCsv(in, ontology);
+            }
+        }
+        throw new IllegalArgumentException("Unsupported ontology file " + file);
+    }
+
+    /**
+     * @return the acronym of the ontology, taken from the file name, e.g. EFO for efo.owl.gz
+     */
+    public static String getOntologyName(Path file) {
+        String name = file.getFileName().toString().replaceAll("\\.gz$", "");
+        int extension = name.lastIndexOf('.');
+        return (extension > 0 ? name.substring(0, extension) : name).toUpperCase();
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file));
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+
+    private static List<OntologyClass> readObo(InputStream in, String ontology) throws IOException {
+        List<OntologyClass> classes = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        OntologyClass current = null;
+        boolean inTerm = false;
+        boolean obsolete = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("[")) {
+                addClass(classes, current, obsolete);
+                current = null;
+                obsolete = false;
+                inTerm = line.equals("[Term]");
+            } else if (!inTerm) {
+                continue;
+            } else if (line.startsWith("id:")) {
+                current = new OntologyClass(ontology, line.substring(3).trim());
+            } else if (current == null) {
+                continue;
+            } else if (line.startsWith("name:")) {
+                current.setPrefLabel(line.substring(5).trim());
+            } else if (line.startsWith("synonym:")) {
+                Matcher matcher = OBO_SYNONYM.matcher(line);
+                if (matcher.find()) {
+                    current.getSynonyms().add(matcher.group(1).replace("\\\"", "\""));
+                }
+            } else if (line.startsWith("is_obsolete:")) {
+                obsolete = line.substring(12).trim().equals("true");
+            }
+        }
+        addClass(classes, current, obsolete);
+        return classes;
+    }
+
+    private static List<OntologyClass> readOwl(InputStream in, String ontology) throws IOException {
+        List<OntologyClass> classes = new ArrayList<>();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            OntologyClass current = null;
+            boolean deprecated = false;
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (current == null) {
+                        String about = reader.getAttributeValue(RDF_NS, "about");
+                        if ("Class".equals(name) && OWL_NS.equals(reader.getNamespaceURI()) && about != null) {
+                            current = new OntologyClass(ontology, getClassId(about, ontology));
+                            deprecated = false;
+                            depth = 1;
+                        }
+                    } else if (depth == 1 && OWL_LABELS.contains(name)) {
+                        // Reading the text consumes the end of the element, the depth stays the same
+                        String label = reader.getElementText().trim();
+                        if (current.getPrefLabel() == null && !label.isEmpty()) {
+                            current.setPrefLabel(label);
+                        }
+                    } else if (depth == 1 && OWL_SYNONYMS.contains(name)) {
+                        String synonym = reader.getElementText().trim();
+                        if (!synonym.isEmpty()) {
+                            current.getSynonyms().add(synonym);
+                        }
+                    } else if (depth == 1 && "deprecated".equals(name)) {
+                        deprecated = reader.getElementText().trim().equals("true");
+                    } else {
+                        depth++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && current != null) {
+                    depth--;
+                    if (depth == 0) {
+                        addClass(classes, current, deprecated);
+                        current = null;
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to parse the OWL file", e);
+        }
+        return classes;
+    }
+
+    private static List<OntologyClass> readCsv(InputStream in, String ontology) throws IOException {
+        List<OntologyClass> classes = new ArrayList<>();
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = readCsvRecord(reader);
+        if (header == null) {
+            return classes;
+        }
+        int idColumn = header.indexOf("Class ID");
+        int labelColumn = header.indexOf("Preferred Label");
+        int synonymsColumn = header.indexOf("Synonyms");
+        int obsoleteColumn = header.indexOf("Obsolete");
+        if (idColumn < 0 || labelColumn < 0) {
+            throw new IOException("The CSV file has no 'Class ID' or 'Preferred Label' column");
+        }
+        List<String> record;
+        while ((record = readCsvRecord(reader)) != null) {
+            if (record.size() <= Math.max(idColumn, labelColumn)) {
+                continue;
+            }
+            String classId = getClassId(record.get(idColumn).trim(), ontology);
+            OntologyClass ontologyClass = new OntologyClass(ontology, classId);
+            ontologyClass.setPrefLabel(record.get(labelColumn).trim());
+            if (synonymsColumn >= 0 && synonymsColumn < record.size()) {
+                for (String synonym : record.get(synonymsColumn).split("\\|")) {
+                    if (!synonym.trim().isEmpty()) {
+                        ontologyClass.getSynonyms().add(synonym.trim());
+                    }
+                }
+            }
+            boolean obsolete = obsoleteColumn >= 0 && obsoleteColumn < record.size()
+                    && record.get(obsoleteColumn).trim().equalsIgnoreCase("true");
+            addClass(classes, ontologyClass, obsolete);
+        }
+        return classes;
+    }
+
+    /**
+     * Read one CSV record, quoted values may contain separators, quotes ("") and line breaks
+     *
+     * @return the values of the record, or null at the end of the file
+     */
+    private static List<String> readCsvRecord(Reader reader) throws IOException {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        int c = reader.read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        value.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    value.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                value.append((char) c);
+            }
+            c = reader.read();
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Turn the IRI of a class into the identifier used by the OBO files, so that a class has the same identifier
+     * whatever the format of the dump: http://purl.obolibrary.org/obo/GO_0008150 and
+     * http://www.ebi.ac.uk/efo/EFO_0000001 (in EFO) become GO:0008150 and EFO:0000001
+     *
+     * @return the OBO identifier, or the IRI itself if it does not follow the OBO conventions
+     */
+    private static String getClassId(String iri, String ontology) {
+        int start = Math.max(iri.lastIndexOf('/'), iri.lastIndexOf('#')) + 1;
+        Matcher matcher = OBO_IRI_ID.matcher(iri.substring(start));
+        if (start == 0 || !matcher.matches()) {
+            return iri;
+        }
+        if (!iri.startsWith(OBO_PURL) && !matcher.group(1).equalsIgnoreCase(ontology)) {
+            return iri;
+        }
+        return matcher.group(1) + ":" + matcher.group(2);
+    }
+
+    private static void addClass(List<OntologyClass> classes, OntologyClass ontologyClass, boolean obsolete) {
+        if (ontologyClass != null && !obsolete
+                && ontologyClass.getPrefLabel() != null && !ontologyClass.getPrefLabel().isEmpty()) {
+            classes.add(ontologyClass);
+        }
+    }
+}
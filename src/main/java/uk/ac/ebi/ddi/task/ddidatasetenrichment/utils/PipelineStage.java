@@ -0,0 +1,95 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * One stage of a processing pipeline: a bounded input queue drained by a fixed number of worker threads.
+ * Submitting to a full queue blocks, so a slow stage throttles the stages feeding it.
+ *
+ * @param <T> type of the items handled by the stage
+ */
+public class PipelineStage<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineStage.class);
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final String name;
+
+    private final BlockingQueue<T> queue;
+
+    private final Consumer<T> handler;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean closed = false;
+
+    public PipelineStage(String name, int parallelism, int queueSize, Consumer<T> handler) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Stage " + name + " needs at least one worker, got " + parallelism);
+        }
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.handler = handler;
+        for (int i = 0; i < parallelism; i++) {
+            Thread worker = new Thread(this::work, name + "-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Hand an item to the stage, waiting for room in the queue if needed
+     *
+     * @throws IllegalStateException if the stage is closed
+     */
+    public void submit(T item) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Stage " + name + " is closed");
+        }
+        queue.put(item);
+    }
+
+    /**
+     * Stop accepting items and wait until the workers have handled everything already submitted
+     */
+    public void close() throws InterruptedException {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                T item = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (item != null) {
+                    handle(item);
+                } else if (closed) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(T item) {
+        try {
+            handler.accept(item);
+        } catch (Throwable e) {
+            // Keep the worker alive whatever happens, the stages feeding this one would block forever without it
+            LOGGER.error("Unexpected exception in stage {}", name, e);
+        }
+    }
+}
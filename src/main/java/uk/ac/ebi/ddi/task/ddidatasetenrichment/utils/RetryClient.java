@@ -1,52 +1,239 @@
 package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.retry.RetryCallback;
-import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.ResourceAccessException;
 
-import java.util.Collections;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+/**
+ * Retries of the asynchronous requests to an API, with an exponential random back off. The waits between the
+ * retries and for the rate limiter are scheduled on a timer, a request does not hold a thread while it waits.
+ */
 public class RetryClient {
 
     private static final int RETRIES = 5;
-    private RetryTemplate retryTemplate = new RetryTemplate();
 
-    public RetryClient() {
-        SimpleRetryPolicy policy =
-                new SimpleRetryPolicy(RETRIES, Collections.singletonMap(Exception.class, true));
-        retryTemplate.setRetryPolicy(policy);
-        ExponentialRandomBackOffPolicy backOffPolicy = new ExponentialRandomBackOffPolicy();
-        backOffPolicy.setInitialInterval(2000);
-        backOffPolicy.setMultiplier(2.0);
-        retryTemplate.setBackOffPolicy(backOffPolicy);
+    private static final long INITIAL_INTERVAL_MS = 2000;
+
+    private static final double MULTIPLIER = 2.0;
+
+    private static final long MAX_INTERVAL_MS = 30000;
+
+    private AdaptiveRateLimiter rateLimiter;
+
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * Make all the requests wait for their turn in the given limiter, which slows down when they get throttled
+     */
+    protected void setRateLimiter(AdaptiveRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
     }
 
-    protected RetryTemplate getRetryTemplate() {
-        return retryTemplate;
+    /**
+     * Fail the requests right away while the given breaker is open, instead of retrying them
+     */
+    protected void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
     }
 
-    private <T, E extends Throwable> T execute(RetryCallback<T, E> retryCallback, int count) throws E {
-        try {
-            return retryTemplate.execute(retryCallback);
-        } catch (HttpClientErrorException e) {
-            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS && count > 0) {
-                return execute(retryCallback, count - 1);
+    public boolean isCircuitOpen() {
+        return circuitBreaker != null && circuitBreaker.isOpen();
+    }
+
+    /**
+     * Send a request until it succeeds, fails with a client error or runs out of retries. The attempts are made
+     * with the deadline of the calling thread, and cancelling the returned future cancels the attempt in progress.
+     *
+     * @param attempt sends the request once
+     * @param timer   runs the attempts once their wait is over
+     */
+    public final <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> attempt,
+                                                       ScheduledExecutorService timer) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (circuitBreaker != null) {
+            if (!circuitBreaker.allowRequest()) {
+                result.completeExceptionally(
+                        new CircuitOpenException("Too many failures, requests are suspended for a while"));
+                return result;
             }
-            throw e;
-        } catch (ResourceAccessException e) {
-            if (count > 0) {
-                return execute(retryCallback, count - 1);
+            result.whenComplete((value, e) -> report(e));
+        }
+        new Retry<>(Deadline.propagate(attempt), Deadline.current(), timer, result).acquire();
+        return result;
+    }
+
+    private void report(Throwable e) {
+        Throwable cause = unwrap(e);
+        if (cause == null) {
+            circuitBreaker.onSuccess();
+        } else if (cause instanceof HttpClientErrorException) {
+            // The API is up and answering, unless it keeps throttling us
+            if (((HttpClientErrorException) cause).getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
             }
-            throw e;
+        } else if (cause instanceof RuntimeException && !(cause instanceof DeadlineExceededException)
+                && !(cause instanceof CancellationException)) {
+            circuitBreaker.onFailure();
+        } else {
+            // Out of time, cancelled or an Error, a trial call must not leave the breaker half open forever
+            circuitBreaker.release();
         }
     }
 
-    public final <T, E extends Throwable> T execute(RetryCallback<T, E> retryCallback) throws E {
-        return execute(retryCallback, RETRIES);
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
-}
 
+    private static Duration getRetryAfter(HttpClientErrorException e) {
+        HttpHeaders headers = e.getResponseHeaders();
+        String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (retryAfter == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ignored) {
+            // Not a number of seconds, so an HTTP date
+        }
+        try {
+            return Duration.ofMillis(Math.max(0, headers.getFirstDate(HttpHeaders.RETRY_AFTER)
+                    - System.currentTimeMillis()));
+        } catch (IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * The attempts of a request. A single step runs at a time, each one scheduling the next.
+     */
+    private final class Retry<T> {
+
+        private final Supplier<CompletableFuture<T>> attempt;
+
+        private final Long deadline;
+
+        private final ScheduledExecutorService timer;
+
+        private final CompletableFuture<T> result;
+
+        private int failures = 0;
+
+        private int throttled = 0;
+
+        private long intervalMs = INITIAL_INTERVAL_MS;
+
+        /** The wait or the attempt in progress */
+        private volatile Future<?> current;
+
+        Retry(Supplier<CompletableFuture<T>> attempt, Long deadline, ScheduledExecutorService timer,
+              CompletableFuture<T> result) {
+            this.attempt = attempt;
+            this.deadline = deadline;
+            this.timer = timer;
+            this.result = result;
+            result.whenComplete((value, e) -> {
+                Future<?> step = current;
+                if (result.isCancelled() && step != null) {
+                    step.cancel(true);
+                }
+            });
+        }
+
+        /**
+         * Wait for the turn of the request in the rate limiter, then send it
+         */
+        void acquire() {
+            long wait = rateLimiter != null ? rateLimiter.reserve() : 0;
+            if (wait > 0) {
+                schedule(this::send, wait);
+            } else {
+                send();
+            }
+        }
+
+        private void send() {
+            if (result.isDone()) {
+                return;
+            }
+            if (deadline != null && System.nanoTime() >= deadline) {
+                result.completeExceptionally(new DeadlineExceededException());
+                return;
+            }
+            CompletableFuture<T> response;
+            try {
+                response = attempt.get();
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            current = response;
+            if (result.isDone()) {
+                response.cancel(true);
+            }
+            response.whenComplete(this::onResponse);
+        }
+
+        private void onResponse(T value, Throwable e) {
+            if (e == null) {
+                if (rateLimiter != null) {
+                    rateLimiter.onSuccess();
+                }
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(e);
+            if (cause instanceof HttpClientErrorException) {
+                // Client errors will not go away by retrying, except the throttling handled by the rate limiter
+                HttpClientErrorException error = (HttpClientErrorException) cause;
+                if (error.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS && rateLimiter != null
+                        && throttled++ < RETRIES) {
+                    rateLimiter.onThrottle(getRetryAfter(error));
+                    acquire();
+                    return;
+                }
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!(cause instanceof RuntimeException) || cause instanceof DeadlineExceededException
+                    || cause instanceof CancellationException || ++failures >= RETRIES) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long backOff = (long) (intervalMs * (1 + ThreadLocalRandom.current().nextDouble() * (MULTIPLIER - 1)));
+            intervalMs = Math.min(MAX_INTERVAL_MS, (long) (intervalMs * MULTIPLIER));
+            long backOffNanos = TimeUnit.MILLISECONDS.toNanos(backOff);
+            if (deadline != null && System.nanoTime() + backOffNanos >= deadline) {
+                // The retry would only fail with the deadline
+                result.completeExceptionally(new DeadlineExceededException());
+                return;
+            }
+            schedule(this::acquire, backOffNanos);
+        }
+
+        private void schedule(Runnable step, long delayNanos) {
+            try {
+                current = timer.schedule(step, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(new ResourceAccessException("The client is shut down"));
+                return;
+            }
+            if (result.isDone()) {
+                current.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Iterator returning the elements of another one in a random order, while holding at most windowSize of them.
+ * Each element read from the source takes the place of a random element of the window, which is returned.
+ * The order is only fully random when the source has fewer elements than the window.
+ *
+ * @param <T> type of the elements
+ */
+public class ShuffledIterator<T> implements Iterator<T> {
+
+    private final Iterator<T> source;
+
+    private final int windowSize;
+
+    private final Random random = new Random();
+
+    private final List<T> window;
+
+    private boolean drained = false;
+
+    public ShuffledIterator(Iterator<T> source, int windowSize) {
+        this.source = source;
+        this.windowSize = Math.max(windowSize, 1);
+        this.window = new ArrayList<>(this.windowSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return source.hasNext() || !window.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        while (window.size() < windowSize && source.hasNext()) {
+            window.add(source.next());
+        }
+        if (window.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        if (source.hasNext()) {
+            int i = random.nextInt(window.size());
+            T next = window.get(i);
+            window.set(i, source.next());
+            return next;
+        }
+        if (!drained) {
+            Collections.shuffle(window, random);
+            drained = true;
+        }
+        return window.remove(window.size() - 1);
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicate concurrent calls with the same key: while a call is in flight, the callers asking for the same key
+ * wait for its result instead of making their own call. Results are not kept once the call is over. The call runs
+ * with the deadline of the caller which made it: when it runs out of time, the callers waiting for it make the call
+ * again with their own deadline rather than failing with it.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Start the call unless one is in flight for the key
+     *
+     * @return the pending result, cancelling it does not affect the other callers
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        // Made again on the thread completing the call in flight, which has none or another deadline
+        Supplier<CompletableFuture<V>> ownCall = Deadline.propagate(call);
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            Long deadline = Deadline.current();
+            return existing.handle((result, error) -> isDeadlineExceeded(error) && !isOver(deadline)
+                    ? execute(key, ownCall) : existing)
+                    .thenCompose(Function.identity());
+        }
+        try {
+            ownCall.get().whenComplete((result, error) -> {
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created.thenApply(Function.identity());
+    }
+
+    /**
+     * Make the blocking call unless one is in flight for the key, and wait for its result
+     */
+    public V get(K key, Supplier<V> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            try {
+                return FutureUtils.await(existing);
+            } catch (DeadlineExceededException e) {
+                if (isOver(Deadline.current())) {
+                    throw e;
+                }
+                // Only the call in flight ran out of time
+                return get(key, call);
+            }
+        }
+        try {
+            V result = call.get();
+            created.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private static boolean isDeadlineExceeded(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof DeadlineExceededException;
+    }
+
+    private static boolean isOver(Long deadline) {
+        return deadline != null && System.nanoTime() >= deadline;
+    }
+}
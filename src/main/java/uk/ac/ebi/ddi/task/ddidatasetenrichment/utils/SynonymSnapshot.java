@@ -0,0 +1,238 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import uk.ac.ebi.ddi.service.db.model.enrichment.Synonym;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Immutable snapshot of the synonym collection, memory mapped from a file.
+ * Lookups binary search the labels directly in the mapped bytes, so they allocate nothing but the result and
+ * every process mapping the same file shares the same pages.
+ * <p>
+ * Layout, all integers big endian:
+ * <pre>
+ * header        magic, version, label count, list count, string count, and the offsets of the 5 sections
+ * labels        (string id, list id) per label, sorted by the UTF-8 bytes of the label
+ * list offsets  list count + 1 positions in the list data
+ * list data     string ids of the synonyms of each list, identical lists are stored once
+ * string offsets string count + 1 positions in the string data
+ * string data   UTF-8 bytes of the labels and synonyms, each distinct string is stored once
+ * </pre>
+ */
+public class SynonymSnapshot {
+
+    private static final int MAGIC = 0x53594e53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 10;
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES = (a, b) -> {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    private final ByteBuffer buffer;
+
+    private final int labelCount;
+
+    private final int labels;
+
+    private final int listOffsets;
+
+    private final int listData;
+
+    private final int stringOffsets;
+
+    private final int stringData;
+
+    private SynonymSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a synonym snapshot file");
+        }
+        labelCount = buffer.getInt(8);
+        labels = buffer.getInt(20);
+        listOffsets = buffer.getInt(24);
+        listData = buffer.getInt(28);
+        stringOffsets = buffer.getInt(32);
+        stringData = buffer.getInt(36);
+    }
+
+    public static SynonymSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SynonymSnapshot(buffer);
+        }
+    }
+
+    public int size() {
+        return labelCount;
+    }
+
+    /**
+     * @return the synonyms of the word, or null if the word is not in the snapshot
+     */
+    public List<String> get(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = labelCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compare(buffer.getInt(labels + middle * 8), key);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return getList(buffer.getInt(labels + middle * 8 + 4));
+            }
+        }
+        return null;
+    }
+
+    private List<String> getList(int list) {
+        int start = buffer.getInt(listOffsets + list * 4);
+        int end = buffer.getInt(listOffsets + (list + 1) * 4);
+        List<String> synonyms = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            synonyms.add(getString(buffer.getInt(listData + i * 4)));
+        }
+        return synonyms;
+    }
+
+    private String getString(int string) {
+        int start = buffer.getInt(stringOffsets + string * 4);
+        int end = buffer.getInt(stringOffsets + (string + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(stringData + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compare(int string, byte[] key) {
+        int start = stringData + buffer.getInt(stringOffsets + string * 4);
+        int length = buffer.getInt(stringOffsets + (string + 1) * 4) + stringData - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Write a snapshot of the synonyms. The file is written next to the target and moved in place at the end,
+     * so processes still mapping the previous snapshot are not disturbed.
+     *
+     * @return the number of labels written
+     */
+    public static int write(Path file, Iterator<Synonym> synonyms) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        Map<List<Integer>, Integer> listIds = new HashMap<>();
+        List<List<Integer>> lists = new ArrayList<>();
+        TreeMap<byte[], int[]> labelEntries = new TreeMap<>(UNSIGNED_BYTES);
+
+        while (synonyms.hasNext()) {
+            Synonym synonym = synonyms.next();
+            if (synonym.getLabel() == null) {
+                continue;
+            }
+            List<Integer> list = new ArrayList<>();
+            if (synonym.getSynonyms() != null) {
+                for (String value : synonym.getSynonyms()) {
+                    list.add(intern(value, stringIds, strings));
+                }
+            }
+            Integer listId = listIds.get(list);
+            if (listId == null) {
+                listId = lists.size();
+                listIds.put(list, listId);
+                lists.add(list);
+            }
+            int labelId = intern(synonym.getLabel(), stringIds, strings);
+            labelEntries.putIfAbsent(strings.get(labelId), new int[]{labelId, listId});
+        }
+
+        long listDataSize = lists.stream().mapToLong(List::size).sum();
+        long stringDataSize = strings.stream().mapToLong(x -> x.length).sum();
+        long labelsOffset = HEADER_INTS * 4L;
+        long listOffsetsOffset = labelsOffset + labelEntries.size() * 8L;
+        long listDataOffset = listOffsetsOffset + (lists.size() + 1) * 4L;
+        long stringOffsetsOffset = listDataOffset + listDataSize * 4;
+        long stringDataOffset = stringOffsetsOffset + (strings.size() + 1) * 4L;
+        if (stringDataOffset + stringDataSize > Integer.MAX_VALUE) {
+            throw new IOException("The synonym snapshot does not fit in 2GB");
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(labelEntries.size());
+            out.writeInt(lists.size());
+            out.writeInt(strings.size());
+            out.writeInt((int) labelsOffset);
+            out.writeInt((int) listOffsetsOffset);
+            out.writeInt((int) listDataOffset);
+            out.writeInt((int) stringOffsetsOffset);
+            out.writeInt((int) stringDataOffset);
+            for (int[] entry : labelEntries.values()) {
+                out.writeInt(entry[0]);
+                out.writeInt(entry[1]);
+            }
+            int position = 0;
+            for (List<Integer> list : lists) {
+                out.writeInt(position);
+                position += list.size();
+            }
+            out.writeInt(position);
+            for (List<Integer> list : lists) {
+                for (Integer string : list) {
+                    out.writeInt(string);
+                }
+            }
+            position = 0;
+            for (byte[] string : strings) {
+                out.writeInt(position);
+                position += string.length;
+            }
+            out.writeInt(position);
+            for (byte[] string : strings) {
+                out.write(string);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return labelEntries.size();
+    }
+
+    private static int intern(String value, Map<String, Integer> stringIds, List<byte[]> strings) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+}
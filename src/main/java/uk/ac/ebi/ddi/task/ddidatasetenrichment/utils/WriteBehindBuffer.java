@@ -0,0 +1,192 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Buffer of pending writes, handed to the writer once batchSize of them are pending or every flushInterval
+ * otherwise. A full batch is written by the thread which filled it, the periodic flush by a background thread.
+ * The writes which fail are tried once more, then dropped and counted. {@link #flush()} is a barrier: it returns
+ * once everything added before it was called is written or dropped, including the batches other threads are
+ * writing at the time.
+ *
+ * @param <T> type of the buffered writes
+ */
+public class WriteBehindBuffer<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private static final long RETRY_DELAY_MS = 1000;
+
+    /**
+     * Write a batch of items
+     *
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    public interface Writer<T> {
+
+        /**
+         * @return the items which could not be written, throwing means none of them was
+         */
+        List<T> write(List<T> items);
+    }
+
+    private final String name;
+
+    private final int batchSize;
+
+    private final Writer<T> writer;
+
+    private final Consumer<List<T>> onDropped;
+
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private List<T> pending = new ArrayList<>();
+
+    /** Batches being written, guarded by this */
+    private int writing = 0;
+
+    public WriteBehindBuffer(String name, int batchSize, Duration flushInterval, Writer<T> writer) {
+        this(name, batchSize, flushInterval, writer, x -> { });
+    }
+
+    /**
+     * @param onDropped called with the items which could not be written even after the retry
+     */
+    public WriteBehindBuffer(String name, int batchSize, Duration flushInterval, Writer<T> writer,
+                             Consumer<List<T>> onDropped) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.writer = writer;
+        this.onDropped = onDropped;
+        long interval = flushInterval.toMillis();
+        // A daemon, the application context is not closed once the task is done and must not keep the JVM alive
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-flush-");
+        threadFactory.setDaemon(true);
+        flusher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        flusher.scheduleWithFixedDelay(this::writePending, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void add(T item) {
+        List<T> toFlush = null;
+        synchronized (this) {
+            pending.add(item);
+            if (pending.size() >= batchSize) {
+                toFlush = pending;
+                pending = new ArrayList<>();
+                writing++;
+            }
+        }
+        if (toFlush != null) {
+            write(toFlush);
+        }
+    }
+
+    /**
+     * Write everything pending, and wait for the batches already being written
+     */
+    public void flush() {
+        writePending();
+        synchronized (this) {
+            while (writing > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic flush and write everything pending. A periodic flush in progress is not interrupted, it
+     * completes with its retry.
+     */
+    public void close() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * @return the number of items dropped because they could not be written
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "written=" + written.get() + ", failed=" + failed.get();
+    }
+
+    private void writePending() {
+        List<T> toFlush;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            toFlush = pending;
+            pending = new ArrayList<>();
+            writing++;
+        }
+        write(toFlush);
+    }
+
+    /**
+     * Write a batch counted in writing
+     */
+    private void write(List<T> items) {
+        try {
+            writeWithRetry(items);
+        } finally {
+            synchronized (this) {
+                writing--;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeWithRetry(List<T> items) {
+        List<T> failures = tryWrite(items);
+        if (!failures.isEmpty()) {
+            LOGGER.warn("{} of {} items of {} not written, trying again", failures.size(), items.size(), name);
+            try {
+                Thread.sleep(RETRY_DELAY_MS);
+                failures = tryWrite(failures);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        written.addAndGet(items.size() - failures.size());
+        if (!failures.isEmpty()) {
+            failed.addAndGet(failures.size());
+            LOGGER.error("{} items of {} dropped after a retry", failures.size(), name);
+            onDropped.accept(failures);
+        }
+    }
+
+    private List<T> tryWrite(List<T> items) {
+        try {
+            return writer.write(items);
+        } catch (RuntimeException e) {
+            LOGGER.error("Exception occurred when writing {} items of {},", items.size(), name, e);
+            return items;
+        }
+    }
+}
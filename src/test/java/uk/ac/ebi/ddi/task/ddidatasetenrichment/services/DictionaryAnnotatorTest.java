@@ -0,0 +1,94 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.models.OntologyClass;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class DictionaryAnnotatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DictionaryAnnotator annotator;
+
+	@Before
+	public void setUp() throws Exception {
+		List<OntologyClass> classes = new ArrayList<>();
+		classes.add(newClass("CL_0000034", "stem cell", "SC"));
+		classes.add(newClass("CLO_0000019", "cell line", "cultured cell line"));
+		classes.add(newClass("GO_0005623", "cell"));
+		classes.add(newClass("CHEBI_16991", "DNA", "deoxyribonucleic acid"));
+		Path file = folder.newFile("dictionary.tsv.gz").toPath();
+		OntologyDictionary.write(file, classes);
+
+		DatasetEnrichmentTaskProperties properties = new DatasetEnrichmentTaskProperties();
+		properties.setDictionaryFile(file.toString());
+		OntologyDictionary dictionary = new OntologyDictionary();
+		ReflectionTestUtils.setField(dictionary, "properties", properties);
+		dictionary.init();
+		annotator = new DictionaryAnnotator();
+		ReflectionTestUtils.setField(annotator, "ontologyDictionary", dictionary);
+		annotator.init();
+	}
+
+	@Test
+	public void keepsOnlyTheLongestOfTheNestedMatches() {
+		Map<String, Set<String>> words = annotate("Cultured cell line");
+
+		Assert.assertEquals(Collections.singleton("Cultured cell line 1-18"), words.keySet());
+		Assert.assertEquals(Collections.singleton("cultured cell line"), words.get("Cultured cell line 1-18"));
+	}
+
+	@Test
+	public void keepsOverlappingMatchesWhichAreNotNested() {
+		Assert.assertEquals(new HashSet<>(Arrays.asList("stem cell 1-9", "cell line 6-14")),
+				annotate("stem cell line").keySet());
+	}
+
+	@Test
+	public void matchesWholeWordsOnly() {
+		Assert.assertTrue(annotate("subcellular cells and dnase").isEmpty());
+		Assert.assertEquals(Collections.singleton("stem cell 1-9"), annotate("stem cell lines").keySet());
+		Assert.assertEquals(Collections.singleton("cell 2-5"), annotate("(cell)").keySet());
+	}
+
+	@Test
+	public void matchesAcrossCollapsedWhiteSpaceWithTheOriginalPositions() {
+		Map<String, Set<String>> words = annotate("Human\tDNA  and stem \n cell");
+
+		Assert.assertEquals(new HashSet<>(Arrays.asList("DNA 7-9", "stem \n cell 16-26")), words.keySet());
+		Assert.assertEquals(Collections.singleton("deoxyribonucleic acid"), words.get("DNA 7-9"));
+	}
+
+	private Map<String, Set<String>> annotate(String text) {
+		Map<String, Set<String>> words = new TreeMap<>();
+		for (Map.Entry<WordInField, Set<String>> entry : annotator.annotate(text).join().entrySet()) {
+			WordInField word = entry.getKey();
+			words.put(word.getText() + " " + word.getFrom() + "-" + word.getTo(), entry.getValue());
+		}
+		return words;
+	}
+
+	private static OntologyClass newClass(String id, String prefLabel, String... synonyms) {
+		OntologyClass ontologyClass = new OntologyClass("TEST", id);
+		ontologyClass.setPrefLabel(prefLabel);
+		ontologyClass.setSynonyms(Arrays.asList(synonyms));
+		return ontologyClass;
+	}
+}
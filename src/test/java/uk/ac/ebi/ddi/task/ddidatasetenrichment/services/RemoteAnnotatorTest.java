@@ -0,0 +1,130 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.services;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+import uk.ac.ebi.ddi.task.ddidatasetenrichment.configuration.DatasetEnrichmentTaskProperties;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class RemoteAnnotatorTest {
+
+	/** Like the annotator without the longest only filter, every term is matched, across the punctuation too */
+	private static final List<Pattern> TERMS = Arrays.asList(
+			Pattern.compile("stem\\W+cell"), Pattern.compile("cell"), Pattern.compile("protein"));
+
+	private DatasetEnrichmentTaskProperties properties;
+
+	private AsyncBioOntologyService asyncBioOntologyService;
+
+	private RemoteAnnotator annotator;
+
+	@Before
+	public void setUp() {
+		properties = new DatasetEnrichmentTaskProperties();
+		properties.setAnnotatorBatchChars(1000);
+		asyncBioOntologyService = Mockito.mock(AsyncBioOntologyService.class);
+		Mockito.when(asyncBioOntologyService.getAnnotatedWords(Mockito.anyString()))
+				.thenAnswer(invocation -> CompletableFuture.completedFuture(match(invocation.getArgument(0))));
+		AnnotatorCacheService annotatorCacheService = Mockito.mock(AnnotatorCacheService.class);
+		Mockito.when(annotatorCacheService.getAll(Mockito.any())).thenReturn(Collections.emptyMap());
+
+		annotator = new RemoteAnnotator();
+		ReflectionTestUtils.setField(annotator, "asyncBioOntologyService", asyncBioOntologyService);
+		ReflectionTestUtils.setField(annotator, "annotatorCacheService", annotatorCacheService);
+		ReflectionTestUtils.setField(annotator, "properties", properties);
+	}
+
+	@After
+	public void tearDown() {
+		annotator.destroy();
+	}
+
+	@Test
+	public void movesTheWordsBackToTheirText() {
+		Map<WordInField, Set<String>> words = new HashMap<>();
+		words.put(new WordInField("cell", 1, 4), Collections.singleton("cell"));
+		words.put(new WordInField("protein", 11, 17), Collections.singleton("protein"));
+		words.put(new WordInField("stem cell", 20, 28), Collections.singleton("stem cell"));
+		words.put(new WordInField("cell", 32, 35), Collections.singleton("cell"));
+
+		// The text is "a protein stem" at offset 8 of the batch, 14 characters long
+		Assert.assertEquals(Collections.singleton("protein 3-9"),
+				toStrings(RemoteAnnotator.getWordsInRange(words, 8, 14)));
+		// The first and the last characters of the text
+		Assert.assertEquals(Collections.singleton("cell 1-4"),
+				toStrings(RemoteAnnotator.getWordsInRange(words, 0, 5)));
+		Assert.assertEquals(Collections.singleton("cell 1-4"),
+				toStrings(RemoteAnnotator.getWordsInRange(words, 31, 4)));
+		Assert.assertTrue(RemoteAnnotator.getWordsInRange(words, 4, 3).isEmpty());
+	}
+
+	@Test
+	public void batchesWithoutTheLongestOnlyFilter() throws Exception {
+		properties.setAnnotatorLongestOnly(false);
+		annotator.init();
+
+		Map<String, CompletableFuture<Map<WordInField, Set<String>>>> results =
+				annotator.annotate(Arrays.asList("cell and stem", "cell protein"));
+
+		Assert.assertEquals(Collections.singleton("cell 1-4"),
+				toStrings(results.get("cell and stem").get(5, TimeUnit.SECONDS)));
+		Assert.assertEquals(new TreeSet<>(Arrays.asList("cell 1-4", "protein 6-12")),
+				toStrings(results.get("cell protein").get(5, TimeUnit.SECONDS)));
+
+		ArgumentCaptor<String> sent = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(asyncBioOntologyService).getAnnotatedWords(sent.capture());
+		// The batch had a stem cell match across the two texts, which neither of them got
+		Assert.assertTrue(match(sent.getValue()).keySet().stream().anyMatch(w -> w.getText().startsWith("stem")));
+	}
+
+	@Test
+	public void sendsEveryTextAloneWithTheLongestOnlyFilter() throws Exception {
+		annotator.init();
+
+		Map<String, CompletableFuture<Map<WordInField, Set<String>>>> results =
+				annotator.annotate(Arrays.asList("cell and stem", "cell protein"));
+
+		Assert.assertEquals(Collections.singleton("cell 1-4"),
+				toStrings(results.get("cell and stem").get(5, TimeUnit.SECONDS)));
+		Assert.assertEquals(new TreeSet<>(Arrays.asList("cell 1-4", "protein 6-12")),
+				toStrings(results.get("cell protein").get(5, TimeUnit.SECONDS)));
+		Mockito.verify(asyncBioOntologyService).getAnnotatedWords("cell and stem");
+		Mockito.verify(asyncBioOntologyService).getAnnotatedWords("cell protein");
+	}
+
+	private static Map<WordInField, Set<String>> match(String text) {
+		Map<WordInField, Set<String>> words = new HashMap<>();
+		for (Pattern term : TERMS) {
+			Matcher matcher = term.matcher(text);
+			while (matcher.find()) {
+				words.put(new WordInField(matcher.group(), matcher.start() + 1, matcher.end()),
+						Collections.singleton(matcher.group()));
+			}
+		}
+		return words;
+	}
+
+	private static Set<String> toStrings(Map<WordInField, Set<String>> words) {
+		Set<String> result = new TreeSet<>();
+		for (WordInField word : words.keySet()) {
+			result.add(word.getText() + " " + word.getFrom() + "-" + word.getTo());
+		}
+		return result;
+	}
+}
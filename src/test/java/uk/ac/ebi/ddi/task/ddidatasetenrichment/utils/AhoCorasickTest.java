@@ -0,0 +1,77 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AhoCorasickTest {
+
+	@Test
+	public void findsOverlappingOccurrencesOrderedByEnd() {
+		AhoCorasick automaton = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+
+		Assert.assertEquals(Arrays.asList("she 1-4", "he 2-4", "hers 2-6"),
+				describe(automaton, Arrays.asList("he", "she", "his", "hers"), "ushers"));
+	}
+
+	@Test
+	public void findsNestedPatternsThroughTheFailLinks() {
+		List<String> patterns = Arrays.asList("cell", "stem cell", "cell line", "stem cell line");
+		AhoCorasick automaton = new AhoCorasick(patterns);
+
+		Assert.assertEquals(Arrays.asList("stem cell 0-9", "cell 5-9", "stem cell line 0-14", "cell line 5-14"),
+				describe(automaton, patterns, "stem cell line"));
+	}
+
+	@Test
+	public void findsEveryOccurrenceOfARepeatedPattern() {
+		List<String> patterns = Collections.singletonList("aa");
+		AhoCorasick automaton = new AhoCorasick(patterns);
+
+		Assert.assertEquals(Arrays.asList("aa 0-2", "aa 1-3", "aa 2-4"), describe(automaton, patterns, "aaaa"));
+	}
+
+	@Test
+	public void reportsTheFirstIndexOfADuplicatePatternAndIgnoresEmptyOnes() {
+		List<String> patterns = Arrays.asList("", "dna", "dna");
+		AhoCorasick automaton = new AhoCorasick(patterns);
+
+		List<AhoCorasick.Match> matches = automaton.findAll("rna and dna");
+		Assert.assertEquals(1, matches.size());
+		Assert.assertEquals(1, matches.get(0).getPattern());
+		Assert.assertEquals(8, matches.get(0).getStart());
+		Assert.assertEquals(11, matches.get(0).getEnd());
+	}
+
+	@Test
+	public void findsNothingInATextWithoutPatterns() {
+		AhoCorasick automaton = new AhoCorasick(Arrays.asList("protein", "gene"));
+
+		Assert.assertTrue(automaton.findAll("rna sequencing of mouse liver").isEmpty());
+		Assert.assertTrue(automaton.findAll("").isEmpty());
+	}
+
+	@Test
+	public void growsPastTheInitialCapacity() {
+		List<String> patterns = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			patterns.add("term" + i);
+		}
+		AhoCorasick automaton = new AhoCorasick(patterns);
+
+		Assert.assertEquals(Arrays.asList("term4 3-8", "term49 3-9", "term499 3-10", "term4999 3-11"),
+				describe(automaton, patterns, "xx term4999"));
+	}
+
+	private static List<String> describe(AhoCorasick automaton, List<String> patterns, String text) {
+		List<String> matches = new ArrayList<>();
+		for (AhoCorasick.Match match : automaton.findAll(text)) {
+			matches.add(patterns.get(match.getPattern()) + " " + match.getStart() + "-" + match.getEnd());
+		}
+		return matches;
+	}
+}
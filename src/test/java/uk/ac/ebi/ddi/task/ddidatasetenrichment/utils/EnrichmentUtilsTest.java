@@ -0,0 +1,115 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ebi.ddi.service.db.model.enrichment.WordInField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class EnrichmentUtilsTest {
+
+	@Test
+	public void keepsTheLongestOfNestedWords() {
+		List<WordInField> words = Arrays.asList(
+				new WordInField("cell", 6, 9),
+				new WordInField("stem cell line", 1, 14),
+				new WordInField("stem cell", 1, 9),
+				new WordInField("line", 11, 14));
+
+		Assert.assertEquals(Collections.singletonList("stem cell line 1-14"),
+				describe(EnrichmentUtils.getLongestWords(words)));
+	}
+
+	@Test
+	public void keepsTheLeftmostOfPartiallyOverlappingWords() {
+		List<WordInField> words = Arrays.asList(
+				new WordInField("cell line", 6, 14),
+				new WordInField("stem cell", 1, 9),
+				new WordInField("dna", 20, 22));
+
+		Assert.assertEquals(Arrays.asList("stem cell 1-9", "dna 20-22"),
+				describe(EnrichmentUtils.getLongestWords(words)));
+	}
+
+	@Test
+	public void keepsWordsWhichOnlyTouch() {
+		List<WordInField> words = Arrays.asList(
+				new WordInField("b", 2, 2),
+				new WordInField("a", 1, 1),
+				new WordInField("c", 3, 3),
+				new WordInField("a", 1, 1));
+
+		Assert.assertEquals(Arrays.asList("a 1-1", "b 2-2", "c 3-3"), describe(EnrichmentUtils.getLongestWords(words)));
+	}
+
+	@Test
+	public void returnsNothingForNoWords() {
+		Assert.assertTrue(EnrichmentUtils.getLongestWords(Collections.emptyList()).isEmpty());
+	}
+
+	/**
+	 * The pairwise scan it replaces kept a word unless it overlapped a word already kept, and replaced that one
+	 * when it covered it. Its result depended on the order of the words, for words sorted by position, longest
+	 * first, the sweep must give the same result whatever the order it gets them in.
+	 */
+	@Test
+	public void matchesThePairwiseScanOfTheSortedWords() {
+		Random random = new Random(42);
+		for (int run = 0; run < 200; run++) {
+			int annotations = 1 + random.nextInt(200);
+			int textLength = annotations * 8;
+			List<WordInField> words = new ArrayList<>();
+			for (int i = 0; i < annotations; i++) {
+				int from = 1 + random.nextInt(textLength);
+				int to = from + random.nextInt(random.nextInt(3) == 0 ? 30 : 8);
+				words.add(new WordInField("word" + i, from, to));
+			}
+			List<WordInField> sorted = new ArrayList<>(words);
+			sorted.sort(Comparator.comparingInt(WordInField::getFrom)
+					.thenComparing(Comparator.comparingInt(WordInField::getTo).reversed()));
+			Collections.shuffle(words, random);
+
+			List<WordInField> longest = EnrichmentUtils.getLongestWords(words);
+
+			// Which one of several words on the same span is kept does not matter
+			Assert.assertEquals(getSpans(pairwiseScan(sorted)), getSpans(longest));
+			for (int i = 1; i < longest.size(); i++) {
+				Assert.assertTrue(longest.get(i - 1).getTo() < longest.get(i).getFrom());
+			}
+		}
+	}
+
+	private static List<WordInField> pairwiseScan(List<WordInField> words) {
+		List<WordInField> matchedWords = new ArrayList<>();
+		for (WordInField word : words) {
+			WordInField overlapped = null;
+			for (WordInField wordInList : matchedWords) {
+				if (word.getFrom() <= wordInList.getTo() && word.getTo() >= wordInList.getFrom()) {
+					overlapped = wordInList;
+					break;
+				}
+			}
+			if (overlapped == null) {
+				matchedWords.add(word);
+			} else if (word.getFrom() <= overlapped.getFrom() && word.getTo() >= overlapped.getTo()) {
+				matchedWords.set(matchedWords.indexOf(overlapped), word);
+			}
+		}
+		return matchedWords;
+	}
+
+	private static List<String> getSpans(List<WordInField> words) {
+		return words.stream().map(x -> x.getFrom() + "-" + x.getTo()).collect(Collectors.toList());
+	}
+
+	private static List<String> describe(List<WordInField> words) {
+		return words.stream().map(x -> x.getText() + " " + x.getFrom() + "-" + x.getTo())
+				.collect(Collectors.toList());
+	}
+}
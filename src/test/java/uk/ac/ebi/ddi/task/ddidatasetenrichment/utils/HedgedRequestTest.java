@@ -0,0 +1,120 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class HedgedRequestTest {
+
+	private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+	/** The requests sent, completed by the tests */
+	private final List<CompletableFuture<String>> requests = new CopyOnWriteArrayList<>();
+
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	public void doesNotSendTheHedgeWhenTheFirstRequestIsFast() throws Exception {
+		CompletableFuture<String> result = start(false);
+		requests.get(0).complete("first");
+
+		Assert.assertEquals("first", result.get(1, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		Assert.assertEquals(1, requests.size());
+	}
+
+	@Test
+	public void hedgeWinsAndCancelsTheFirstRequest() throws Exception {
+		CompletableFuture<String> result = start(false);
+		awaitRequests(2);
+		requests.get(1).complete("hedge");
+
+		Assert.assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+		Assert.assertTrue(requests.get(0).isCancelled());
+	}
+
+	@Test
+	public void firstRequestWinsAndCancelsTheHedge() throws Exception {
+		CompletableFuture<String> result = start(false);
+		awaitRequests(2);
+		requests.get(0).complete("first");
+
+		Assert.assertEquals("first", result.get(1, TimeUnit.SECONDS));
+		Assert.assertTrue(requests.get(1).isCancelled());
+	}
+
+	@Test
+	public void failsOnlyOnceBothRequestsFailed() throws Exception {
+		CompletableFuture<String> result = start(false);
+		awaitRequests(2);
+		requests.get(0).completeExceptionally(new IllegalStateException("first"));
+		Assert.assertFalse(result.isDone());
+		requests.get(1).complete("hedge");
+		Assert.assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+
+		result = start(false);
+		awaitRequests(4);
+		requests.get(3).completeExceptionally(new IllegalStateException("hedge"));
+		Assert.assertFalse(result.isDone());
+		requests.get(2).completeExceptionally(new IllegalStateException("first"));
+		try {
+			result.get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertEquals("hedge", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void failsWithTheFirstRequestWhenTheHedgeIsNotSent() throws Exception {
+		CompletableFuture<String> result = start(true);
+		Thread.sleep(100);
+		Assert.assertEquals(1, requests.size());
+		requests.get(0).completeExceptionally(new IllegalStateException("first"));
+		try {
+			result.get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertEquals("first", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void cancelsBothRequests() throws Exception {
+		CompletableFuture<String> result = start(false);
+		awaitRequests(2);
+		result.cancel(true);
+
+		Assert.assertTrue(requests.get(0).isCancelled());
+		Assert.assertTrue(requests.get(1).isCancelled());
+	}
+
+	private CompletableFuture<String> start(boolean busy) {
+		return new HedgedRequest<>(() -> {
+			CompletableFuture<String> request = new CompletableFuture<>();
+			requests.add(request);
+			return request;
+		}, DELAY, timer, () -> busy).start();
+	}
+
+	private void awaitRequests(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (requests.size() < count && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(count, requests.size());
+	}
+}
@@ -0,0 +1,77 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class RetryClientTest {
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+	private RetryClient client;
+
+	@Before
+	public void setUp() {
+		client = new RetryClient();
+		// Opens on the first failure
+		client.setCircuitBreaker(new CircuitBreaker("test", 1, Duration.ofMinutes(1)));
+	}
+
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	public void cancellingTheRequestIsNotAFailure() {
+		CompletableFuture<String> attempt = new CompletableFuture<>();
+		CompletableFuture<String> result = client.executeAsync(() -> attempt, timer);
+		result.cancel(true);
+
+		Assert.assertTrue(attempt.isCancelled());
+		Assert.assertFalse(client.isCircuitOpen());
+	}
+
+	@Test
+	public void runningOutOfTimeIsNotAFailure() throws Exception {
+		Deadline.run(System.nanoTime() - 1, () -> {
+			CompletableFuture<String> result = client.executeAsync(CompletableFuture::new, timer);
+			try {
+				result.get(1, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof DeadlineExceededException);
+			}
+		});
+		Assert.assertFalse(client.isCircuitOpen());
+	}
+
+	@Test
+	public void clientErrorsAreNotRetriedNorFailures() throws Exception {
+		int[] attempts = new int[1];
+		CompletableFuture<String> result = client.executeAsync(() -> {
+			attempts[0]++;
+			CompletableFuture<String> response = new CompletableFuture<>();
+			response.completeExceptionally(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+			return response;
+		}, timer);
+		try {
+			result.get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof HttpClientErrorException);
+		}
+		Assert.assertEquals(1, attempts[0]);
+		Assert.assertFalse(client.isCircuitOpen());
+	}
+}
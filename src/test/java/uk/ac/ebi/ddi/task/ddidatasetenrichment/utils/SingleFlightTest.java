@@ -0,0 +1,106 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SingleFlightTest {
+
+	private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+	@Test
+	public void waitersShareTheCallInFlight() throws Exception {
+		CompletableFuture<String> call = new CompletableFuture<>();
+		AtomicInteger calls = new AtomicInteger();
+		CompletableFuture<String> first = singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return call;
+		});
+		CompletableFuture<String> second = singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return new CompletableFuture<>();
+		});
+		call.complete("value");
+
+		Assert.assertEquals("value", first.get(1, TimeUnit.SECONDS));
+		Assert.assertEquals("value", second.get(1, TimeUnit.SECONDS));
+		Assert.assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void waiterCallsAgainWhenTheCallInFlightRanOutOfTime() throws Exception {
+		CompletableFuture<String> call = new CompletableFuture<>();
+		List<Long> deadlines = new ArrayList<>();
+		long later = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+		Deadline.run(later - TimeUnit.SECONDS.toNanos(30), () ->
+				singleFlight.execute("key", () -> {
+					deadlines.add(Deadline.current());
+					return call;
+				}));
+		AtomicReference<CompletableFuture<String>> waiter = new AtomicReference<>();
+		Deadline.run(later, () -> waiter.set(singleFlight.execute("key", () -> {
+			deadlines.add(Deadline.current());
+			return CompletableFuture.completedFuture("retried");
+		})));
+		call.completeExceptionally(new DeadlineExceededException());
+
+		Assert.assertEquals("retried", waiter.get().get(1, TimeUnit.SECONDS));
+		Assert.assertEquals(2, deadlines.size());
+		Assert.assertEquals(Long.valueOf(later), deadlines.get(1));
+	}
+
+	@Test
+	public void waiterSharesTheOtherErrors() throws Exception {
+		CompletableFuture<String> call = new CompletableFuture<>();
+		singleFlight.execute("key", () -> call);
+		CompletableFuture<String> waiter = singleFlight.execute("key", () -> CompletableFuture.completedFuture("no"));
+		call.completeExceptionally(new IllegalStateException("failed"));
+
+		try {
+			waiter.get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void blockingWaiterCallsAgainWhenTheCallInFlightRanOutOfTime() throws Exception {
+		CountDownLatch inFlight = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread leader = new Thread(() -> {
+			try {
+				singleFlight.get("key", () -> {
+					inFlight.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new DeadlineExceededException();
+				});
+			} catch (DeadlineExceededException ignored) {
+				// The leader ran out of time
+			}
+		});
+		leader.start();
+		Assert.assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+
+		AtomicReference<String> result = new AtomicReference<>();
+		Thread waiter = new Thread(() -> result.set(singleFlight.get("key", () -> "retried")));
+		waiter.start();
+		Thread.sleep(100);
+		release.countDown();
+		waiter.join(5000);
+
+		Assert.assertEquals("retried", result.get());
+	}
+}
@@ -0,0 +1,121 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.ddi.service.db.model.enrichment.Synonym;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SynonymSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsBackTheSynonymsOfEveryLabel() throws IOException {
+		List<Synonym> synonyms = new ArrayList<>();
+		synonyms.add(new Synonym("protein", Arrays.asList("polypeptide", "proteins")));
+		synonyms.add(new Synonym("dna", Arrays.asList("deoxyribonucleic acid", "DNA")));
+		synonyms.add(new Synonym("rna", Collections.singletonList("ribonucleic acid")));
+		// Shares its list with protein and its strings with the other words
+		synonyms.add(new Synonym("polypeptide", Arrays.asList("polypeptide", "proteins")));
+		synonyms.add(new Synonym("α-helix", Arrays.asList("alpha helix", "hélice α")));
+		synonyms.add(new Synonym("Z-DNA", Collections.singletonList("dna")));
+
+		SynonymSnapshot snapshot = writeAndOpen(synonyms);
+
+		Assert.assertEquals(synonyms.size(), snapshot.size());
+		for (Synonym synonym : synonyms) {
+			Assert.assertEquals(synonym.getLabel(), synonym.getSynonyms(), snapshot.get(synonym.getLabel()));
+		}
+	}
+
+	@Test
+	public void returnsNullForTheMissingWords() throws IOException {
+		SynonymSnapshot snapshot = writeAndOpen(Arrays.asList(
+				new Synonym("cell", Collections.singletonList("cells")),
+				new Synonym("cell line", Collections.singletonList("cultured cell line"))));
+
+		Assert.assertNull(snapshot.get("cel"));
+		Assert.assertNull(snapshot.get("cell lines"));
+		Assert.assertNull(snapshot.get("Cell"));
+		Assert.assertNull(snapshot.get(""));
+		Assert.assertNull(snapshot.get("zebrafish"));
+	}
+
+	@Test
+	public void keepsTheWordsWithoutSynonymsAndSkipsTheUnlabelledOnes() throws IOException {
+		SynonymSnapshot snapshot = writeAndOpen(Arrays.asList(
+				new Synonym("orphan", null),
+				new Synonym("lonely", Collections.emptyList()),
+				new Synonym(null, Collections.singletonList("nothing"))));
+
+		Assert.assertEquals(2, snapshot.size());
+		Assert.assertEquals(Collections.emptyList(), snapshot.get("orphan"));
+		Assert.assertEquals(Collections.emptyList(), snapshot.get("lonely"));
+	}
+
+	@Test
+	public void keepsTheFirstEntryOfADuplicateLabel() throws IOException {
+		SynonymSnapshot snapshot = writeAndOpen(Arrays.asList(
+				new Synonym("gene", Collections.singletonList("locus")),
+				new Synonym("gene", Collections.singletonList("cistron"))));
+
+		Assert.assertEquals(1, snapshot.size());
+		Assert.assertEquals(Collections.singletonList("locus"), snapshot.get("gene"));
+	}
+
+	@Test
+	public void opensAnEmptySnapshot() throws IOException {
+		SynonymSnapshot snapshot = writeAndOpen(Collections.emptyList());
+
+		Assert.assertEquals(0, snapshot.size());
+		Assert.assertNull(snapshot.get("protein"));
+	}
+
+	@Test
+	public void replacesThePreviousSnapshotWithoutLeavingTheTemporaryFile() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("synonyms.snapshot");
+		SynonymSnapshot.write(file, Collections.singletonList(new Synonym("old", null)).iterator());
+		SynonymSnapshot previous = SynonymSnapshot.open(file);
+
+		int written = SynonymSnapshot.write(file,
+				Collections.singletonList(new Synonym("new", Collections.singletonList("recent"))).iterator());
+
+		Assert.assertEquals(1, written);
+		Assert.assertEquals(Collections.singletonList("recent"), SynonymSnapshot.open(file).get("new"));
+		Assert.assertEquals(Collections.emptyList(), previous.get("old"));
+		Assert.assertEquals(Collections.singletonList(file), listFiles());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAFileWhichIsNotASnapshot() throws IOException {
+		Path file = folder.newFile("synonyms.snapshot").toPath();
+		Files.write(file, new byte[64]);
+
+		SynonymSnapshot.open(file);
+	}
+
+	private SynonymSnapshot writeAndOpen(List<Synonym> synonyms) throws IOException {
+		Path file = folder.getRoot().toPath().resolve("synonyms.snapshot");
+		Assert.assertEquals((int) synonyms.stream().filter(x -> x.getLabel() != null).map(Synonym::getLabel)
+				.distinct().count(), SynonymSnapshot.write(file, synonyms.iterator()));
+		return SynonymSnapshot.open(file);
+	}
+
+	private List<Path> listFiles() throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			return files.collect(Collectors.toList());
+		}
+	}
+}
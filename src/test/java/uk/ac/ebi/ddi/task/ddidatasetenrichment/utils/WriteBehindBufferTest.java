@@ -0,0 +1,132 @@
+package uk.ac.ebi.ddi.task.ddidatasetenrichment.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WriteBehindBufferTest {
+
+	/** Long enough for the periodic flush not to get in the way */
+	private static final Duration NEVER = Duration.ofHours(1);
+
+	@Test
+	public void writesAFullBatchRightAway() {
+		List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+		WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 3, NEVER, items -> {
+			batches.add(new ArrayList<>(items));
+			return Collections.emptyList();
+		});
+		buffer.add(1);
+		buffer.add(2);
+		Assert.assertTrue(batches.isEmpty());
+		buffer.add(3);
+		Assert.assertEquals(Collections.singletonList(Arrays.asList(1, 2, 3)), batches);
+
+		buffer.add(4);
+		buffer.close();
+		Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Collections.singletonList(4)), batches);
+		Assert.assertEquals("written=4, failed=0", buffer.toString());
+	}
+
+	@Test
+	public void retriesTheItemsWhichFailed() {
+		List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+		List<Integer> dropped = new CopyOnWriteArrayList<>();
+		WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 10, NEVER, items -> {
+			batches.add(new ArrayList<>(items));
+			return batches.size() == 1 ? Collections.singletonList(2) : Collections.emptyList();
+		}, dropped::addAll);
+		buffer.add(1);
+		buffer.add(2);
+		buffer.add(3);
+		buffer.flush();
+
+		Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Collections.singletonList(2)), batches);
+		Assert.assertTrue(dropped.isEmpty());
+		Assert.assertEquals(0, buffer.getFailed());
+		Assert.assertEquals("written=3, failed=0", buffer.toString());
+		buffer.close();
+	}
+
+	@Test
+	public void dropsTheItemsWhichFailAgain() {
+		AtomicInteger attempts = new AtomicInteger();
+		List<Integer> dropped = new CopyOnWriteArrayList<>();
+		WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 10, NEVER, items -> {
+			attempts.incrementAndGet();
+			throw new IllegalStateException("down");
+		}, dropped::addAll);
+		buffer.add(1);
+		buffer.add(2);
+		buffer.flush();
+
+		Assert.assertEquals(2, attempts.get());
+		Assert.assertEquals(Arrays.asList(1, 2), dropped);
+		Assert.assertEquals(2, buffer.getFailed());
+		Assert.assertEquals("written=0, failed=2", buffer.toString());
+		buffer.close();
+	}
+
+	@Test
+	public void flushWaitsForTheWriteInProgress() throws InterruptedException {
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Integer> written = new CopyOnWriteArrayList<>();
+		WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 10, Duration.ofMillis(10), items -> {
+			writing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			written.addAll(items);
+			return Collections.emptyList();
+		});
+		buffer.add(1);
+		// The periodic flush took the item and is still writing it
+		Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+		CountDownLatch flushed = new CountDownLatch(1);
+		Thread flush = new Thread(() -> {
+			buffer.flush();
+			flushed.countDown();
+		});
+		flush.start();
+		Assert.assertFalse(flushed.await(200, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(Collections.singletonList(1), written);
+		buffer.close();
+	}
+
+	@Test
+	public void closeLetsThePeriodicFlushRetry() throws InterruptedException {
+		CountDownLatch failedOnce = new CountDownLatch(1);
+		List<Integer> written = new CopyOnWriteArrayList<>();
+		WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 10, Duration.ofMillis(10), items -> {
+			if (failedOnce.getCount() > 0) {
+				failedOnce.countDown();
+				return items;
+			}
+			written.addAll(items);
+			return Collections.emptyList();
+		});
+		buffer.add(1);
+		// The periodic flush is waiting to retry
+		Assert.assertTrue(failedOnce.await(5, TimeUnit.SECONDS));
+		buffer.close();
+
+		Assert.assertEquals(Collections.singletonList(1), written);
+		Assert.assertEquals(0, buffer.getFailed());
+	}
+}